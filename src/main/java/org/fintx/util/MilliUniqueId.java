@@ -0,0 +1,427 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fintx.util;
+
+import java.io.Serializable;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A globally unique identifier with millisecond time, the version 1 of the 16 bytes layout.
+ * </p>
+ *
+ * <p>
+ * Consists of 16 bytes, divided as follows:
+ * </p>
+ * <table border="1">
+ * <caption>MilliUniqueId layout</caption>
+ * <tr>
+ * <td>0</td>
+ * <td>1</td>
+ * <td>2</td>
+ * <td>3</td>
+ * <td>4</td>
+ * <td>5</td>
+ * <td>6</td>
+ * <td>7</td>
+ * <td>8</td>
+ * <td>9</td>
+ * <td>10</td>
+ * <td>11</td>
+ * <td>12</td>
+ * <td>13</td>
+ * <td>14</td>
+ * <td>15</td>
+ * </tr>
+ * <tr>
+ * <td colspan="6">version (4 bits) and time of millisecond (44 bits)</td>
+ * <td colspan="6">machine</td>
+ * <td colspan="2">pid</td>
+ * <td colspan="2">counter</td>
+ * </tr>
+ * </table>
+ *
+ * <p>
+ * Ids of one JVM are strictly increasing. The counter restarts every millisecond at a random offset of the JVM (less then 32768), when it runs out
+ * (at least 32768 ids in a millisecond) the next millisecond is used in advance, so there is no per second limit. When the machine time goes back,
+ * the last millisecond is kept until the machine time catches up. The string representations (22 base64 or 32 hex characters) and the byte array (16
+ * bytes) could be told apart from the ones of {@link UniqueId} by their length, see {@link UniqueIdLayout}.
+ * </p>
+ * <p>
+ * Instances of this class are immutable.
+ * </p>
+ * <p>
+ * Limitations:
+ * </p>
+ * <p>
+ * ProcessId on os could not bigger then 65535. Only in one bundle of same JVM when using OSGI. The time could not be later then the year 2527.
+ * </p>
+ * <p>
+ * The ids rest on the identity (machine and process identifier) more then the ones of {@link UniqueId}: two JVMs with the same identity (e.g. the
+ * default MAC address of a container and pid 1) generate ids of the same milliseconds, and the random offsets only make their counters unlikely
+ * to overlap when few ids are generated per millisecond. A JVM restarted with the same identity within a millisecond of its last id, or after the
+ * machine time went back, generates the ids of the last run again. Set the system properties {@code org.fintx.util.UniqueId.registry} and
+ * {@code org.fintx.util.UniqueId.owner} to fail at startup if the identity is registered by another owner, see {@link UniqueIdRegistry}.
+ * </p>
+ *
+ */
+public final class MilliUniqueId implements Comparable<MilliUniqueId>, Serializable, UniqueIdentifier {
+
+    private static final long serialVersionUID = -2187620468870211843L;
+
+    /**
+     * The layout version in the high 4 bits of the first byte.
+     */
+    public static final int VERSION = 1;
+
+    private static final int COUNTER_BITS = 16;
+
+    private static final long MAX_TIMESTAMP = 0x00000fffffffffffL;
+
+    // the first counter of every millisecond, random per JVM and leaving at least half of the counters
+    static final int COUNTER_OFFSET = new SecureRandom().nextInt(0x8000);
+
+    private final long timestamp;
+
+    private final long machineIdentifier;
+
+    private final short processIdentifier;
+
+    private final int counter;
+
+    /**
+     * Gets a new id.
+     *
+     * @return the new MilliUniqueId instance
+     */
+    public static MilliUniqueId get() {
+        long state = nextState();
+        return new MilliUniqueId(state >>> COUNTER_BITS, UniqueId.getGeneratedMachineIdentifier(), (short) UniqueId.getGeneratedProcessIdentifier(),
+                (int) state & 0xffff);
+    }
+
+    /**
+     * Gets a new id.
+     *
+     * @return the new id String
+     */
+    public static String getString() {
+        return get().toString();
+    }
+
+    /**
+     * Checks if a string could be a {@code MilliUniqueId}.
+     *
+     * @param idString hexString (base16) or base64String, a potential MilliUniqueId as a String.
+     * @return whether the string could be a MilliUniqueId
+     * @throws IllegalArgumentException if idString is null
+     */
+    public static boolean isValid(final String idString) {
+        if (idString == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        int len = idString.length();
+        if (len == 32) {
+            for (int i = 0; i < len; i++) {
+                char c = idString.charAt(i);
+                if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F')) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (len == 22) {
+            for (int i = 0; i < len; i++) {
+                char c = idString.charAt(i);
+                if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_' || c == '-')) {
+                    return false;
+                }
+            }
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the next time of millisecond and counter of this JVM, lock free.
+     *
+     * @return timestamp &lt;&lt; 16 | counter
+     */
+    private static long nextState() {
+        for (;;) {
+            long last = Sequence.LAST_STATE.get();
+            long now = System.currentTimeMillis();
+            // a new millisecond restarts the counter at the offset, otherwise the counter overflow carries into the timestamp
+            long next = now > (last >>> COUNTER_BITS) ? now << COUNTER_BITS | COUNTER_OFFSET : last + 1;
+            if (Sequence.LAST_STATE.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Constructs a new instance from the fields.
+     *
+     * @param timestamp of millisecond
+     * @param machineIdentifier the machine identifier
+     * @param processIdentifier the process identifier
+     * @param counter the counter in the millisecond
+     */
+    private MilliUniqueId(final long timestamp, final long machineIdentifier, final short processIdentifier, final int counter) {
+        if (timestamp < 0 || timestamp > MAX_TIMESTAMP) {
+            throw new IllegalArgumentException("The timestamp must be between 0 and 17592186044415 (it must fit in 44 bits).");
+        }
+        this.timestamp = timestamp;
+        this.machineIdentifier = machineIdentifier;
+        this.processIdentifier = processIdentifier;
+        this.counter = counter;
+    }
+
+    /**
+     * Constructs a new instance from a 16 byte array.
+     *
+     * @param bytes the byte array
+     * @return new MilliUniqueId instance
+     */
+    public static MilliUniqueId fromByteArray(final byte[] bytes) {
+        if (bytes == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        if (bytes.length != 16) {
+            throw new IllegalArgumentException("Argument need 16 bytes");
+        }
+        if ((bytes[0] >> 4 & 0xf) != VERSION) {
+            throw new IllegalArgumentException("Unsupported layout version:" + (bytes[0] >> 4 & 0xf));
+        }
+        return new MilliUniqueId(bytesToLong(bytes, 0, 6) & MAX_TIMESTAMP, bytesToLong(bytes, 6, 6), (short) bytesToLong(bytes, 12, 2),
+                (int) bytesToLong(bytes, 14, 2));
+    }
+
+    /**
+     * Constructs a new instance from a 32 characters hexadecimal (base16 encoding) string representation.
+     *
+     * @param hexString the string to convert
+     * @return new MilliUniqueId instance
+     */
+    public static MilliUniqueId fromHexString(final String hexString) {
+        if (!isValid(hexString) || hexString.length() != 32) {
+            throw new IllegalArgumentException("invalid hexadecimal representation of a MilliUniqueId: [" + hexString + "]");
+        }
+        return fromByteArray(UniqueIdCodec.parseHexString(hexString));
+    }
+
+    /**
+     * Constructs a new instance from a 22 characters base64 encoding string representation.
+     *
+     * @param base64String the string to convert
+     * @return new MilliUniqueId instance
+     */
+    public static MilliUniqueId fromBase64String(final String base64String) {
+        return fromByteArray(parseBase64String(base64String, false));
+    }
+
+    /**
+     * Constructs a new instance from a 22 characters sortable base64 encoding string representation.
+     *
+     * @param sortableBase64String the string to convert
+     * @return new MilliUniqueId instance
+     * @see UniqueId#toSortableBase64String()
+     */
+    public static MilliUniqueId fromSortableBase64String(final String sortableBase64String) {
+        return fromByteArray(parseBase64String(sortableBase64String, true));
+    }
+
+    /**
+     * Gets the layout of the id.
+     *
+     * @return {@link UniqueIdLayout#MILLISECOND}
+     */
+    @Override
+    public UniqueIdLayout getLayout() {
+        return UniqueIdLayout.MILLISECOND;
+    }
+
+    /**
+     * Convert to a byte array.
+     *
+     * @return the 16 bytes array
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[16];
+        longToBytes(bytes, 0, 6, (long) VERSION << 44 | timestamp);
+        longToBytes(bytes, 6, 6, machineIdentifier);
+        longToBytes(bytes, 12, 2, processIdentifier);
+        longToBytes(bytes, 14, 2, counter);
+        return bytes;
+    }
+
+    /**
+     * Gets the timestamp (number of milliseconds since the Unix epoch).
+     *
+     * @return the timestamp of millisecond
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Gets the timestamp as an {@code Instant}.
+     *
+     * @return the Instant
+     */
+    public Instant getInstant() {
+        return Instant.ofEpochMilli(timestamp);
+    }
+
+    /**
+     * Gets the machine identifier (physical MAC address).
+     *
+     * @return the machine identifier
+     */
+    public long getMachineIdentifier() {
+        return machineIdentifier;
+    }
+
+    /**
+     * Gets the process identifier.
+     *
+     * @return the process identifier
+     */
+    public int getProcessIdentifier() {
+        return processIdentifier & 0x0000ffff;
+    }
+
+    /**
+     * Gets the counter in the millisecond.
+     *
+     * @return the counter
+     */
+    public int getCounter() {
+        return counter;
+    }
+
+    /**
+     * Converts this instance into a 32 characters hexadecimal string representation.
+     *
+     * @return a string representation of the id in hexadecimal format
+     */
+    public String toHexString() {
+        return UniqueIdCodec.toHexString(toByteArray());
+    }
+
+    /**
+     * Converts this instance into a 22 characters base64 URL safe string representation.
+     *
+     * @return a string representation of the id in base64 format
+     */
+    public String toBase64String() {
+        return UniqueIdCodec.toBase64String(toByteArray(), false);
+    }
+
+    /**
+     * Converts this instance into a 22 characters sortable base64 string representation.
+     *
+     * @return a string representation of the id in sortable base64 format
+     * @see UniqueId#toSortableBase64String()
+     */
+    public String toSortableBase64String() {
+        return UniqueIdCodec.toBase64String(toByteArray(), true);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        MilliUniqueId other = (MilliUniqueId) o;
+        return timestamp == other.timestamp && machineIdentifier == other.machineIdentifier && processIdentifier == other.processIdentifier
+                && counter == other.counter;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (timestamp ^ (timestamp >>> 32));
+        result = 31 * result + (int) machineIdentifier;
+        result = 31 * result + (int) processIdentifier;
+        result = 31 * result + counter;
+        return result;
+    }
+
+    @Override
+    public int compareTo(final MilliUniqueId other) {
+        if (other == null) {
+            throw new NullPointerException();
+        }
+        // all the fields are non-negative, the same order as the byte array
+        if (timestamp != other.timestamp) {
+            return timestamp < other.timestamp ? -1 : 1;
+        }
+        if (machineIdentifier != other.machineIdentifier) {
+            return machineIdentifier < other.machineIdentifier ? -1 : 1;
+        }
+        if (processIdentifier != other.processIdentifier) {
+            return getProcessIdentifier() < other.getProcessIdentifier() ? -1 : 1;
+        }
+        return counter < other.counter ? -1 : counter == other.counter ? 0 : 1;
+    }
+
+    @Override
+    public String toString() {
+        return toBase64String();
+    }
+
+    private static byte[] parseBase64String(final String s, final boolean sortable) {
+        if (!isValid(s) || s.length() != 22) {
+            throw new IllegalArgumentException("invalid base64 representation of a MilliUniqueId: [" + s + "]");
+        }
+        return UniqueIdCodec.parseBase64String(s, 16, sortable);
+    }
+
+    private static long bytesToLong(final byte[] bytes, final int offset, final int length) {
+        long num = 0;
+        for (int i = offset; i < offset + length; i++) {
+            num = num << 8 | (bytes[i] & 0xff);
+        }
+        return num;
+    }
+
+    private static void longToBytes(final byte[] bytes, final int offset, final int length, final long num) {
+        for (int i = offset + length - 1, shift = 0; i >= offset; i--, shift += 8) {
+            bytes[i] = (byte) (num >>> shift);
+        }
+    }
+
+    /**
+     * The generation state, initialized with the first id, so the identity is registered by the generating JVMs only, not by the parsing ones.
+     */
+    private static final class Sequence {
+
+        // time of millisecond and counter of the last id: timestamp << 16 | counter
+        static final AtomicLong LAST_STATE = new AtomicLong(0);
+
+        static {
+            UniqueIdSequencer.register(UniqueIdSequencer.Mode.RESTART, System.getProperty(UniqueIdSequencer.REGISTRY_PROPERTY),
+                    System.getProperty(UniqueIdSequencer.OWNER_PROPERTY), UniqueId.getGeneratedMachineIdentifier(),
+                    UniqueId.getGeneratedProcessIdentifier());
+        }
+    }
+}
@@ -16,15 +16,21 @@
 
 package org.fintx.util;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.net.NetworkInterface;
-import java.security.SecureRandom;
+import java.time.Instant;
 import java.util.Arrays;
-import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Enumeration;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.UUID;
 
 /**
  * <p>
@@ -62,6 +68,12 @@ import java.util.concurrent.atomic.AtomicLong;
  * </table>
  *
  * <p>
+ * By default the counter starts at a random value and keeps incrementing across seconds. With the system property
+ * {@code -Dorg.fintx.util.UniqueId.counter=restart} the counter restarts from 0 at every new second, so the ids of a process are dense and strictly
+ * increasing in the order generated (there is no per second limit, the next second is used in advance when the counter runs out, and the last second
+ * is kept when the machine time goes back).
+ * </p>
+ * <p>
  * Instances of this class are immutable.
  * </p>
  * <p>
@@ -75,21 +87,22 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 //TODO 1检查long int 溢出的问题
 //TODO 2timestamp是否可以进一步缩短（考虑base64问题移动6bit(2^6=64)省一个字符，重复的时间缩短到1年多（69/64=?））
-public final class UniqueId implements Comparable<UniqueId>, Serializable {
+public final class UniqueId implements Comparable<UniqueId>, Serializable, UniqueIdentifier {
 
     private static final long serialVersionUID = 3670079982654483072L;
 
     private static final int LOW_ORDER_THREE_BYTES = 0x00ffffff;
 
+    private static final int BULK_BUFFER_IDS = 256;
+
+    private static final int BULK_READ_IDS = 4096;
+
     private static final long MACHINE_IDENTIFIER;
 
     private static final short PROCESS_IDENTIFIER;
 
-    private static final AtomicInteger NEXT_COUNTER = new AtomicInteger(new SecureRandom().nextInt());
-    // to prevent time change back maybe when use time server to correct the machine time.
-    private static final AtomicLong LAST_TIMESTAMP = new AtomicLong(0);
-
-    private static final char[] HEX_CHARS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+    // the timestamps and counters of this process, the mode is selected by the system property org.fintx.util.UniqueId.counter
+    private static final UniqueIdSequencer SEQUENCER = UniqueIdSequencer.system();
 
     private final int timestamp;
 
@@ -99,13 +112,29 @@ public final class UniqueId implements Comparable<UniqueId>, Serializable {
 
     private final int counter;
 
+    // lazily cached string representations, racy single check like String.hash (String is immutable, so a race only computes it again)
+    private transient String base64String;
+
+    private transient String hexString;
+
     /**
      * Gets a new object id.
      *
      * @return the new UniqueId instance
      */
     public static UniqueId get() {
-        return new UniqueId(dateToTimestampSeconds(new Date()), MACHINE_IDENTIFIER, PROCESS_IDENTIFIER, NEXT_COUNTER.getAndIncrement(), false);
+        return get(SEQUENCER);
+    }
+
+    /**
+     * Gets a new object id of a sequencer.
+     *
+     * @param sequencer the sequencer
+     * @return the new UniqueId instance
+     */
+    static UniqueId get(final UniqueIdSequencer sequencer) {
+        final long state = sequencer.next();
+        return new UniqueId((int) (state >>> 24), MACHINE_IDENTIFIER, PROCESS_IDENTIFIER, (int) state);
     }
 
     /**
@@ -190,7 +219,7 @@ public final class UniqueId implements Comparable<UniqueId>, Serializable {
      * @return the current counter value.
      */
     public static int getCurrentCounter() {
-        return NEXT_COUNTER.get();
+        return SEQUENCER.getCurrentCounter();
     }
 
     /**
@@ -199,87 +228,52 @@ public final class UniqueId implements Comparable<UniqueId>, Serializable {
      * @return the current counter value.
      */
     public static long getCurrentTimeStamp() {
-        return LAST_TIMESTAMP.get() & 0xffffffffL;
+        return SEQUENCER.getCurrentTimestamp();
     }
 
     /**
-     * Constructs a new instance from the timestamp
+     * Constructs a new instance from the fields without any check.
      *
      * @param timestamp of second
      * @param machineIdentifier the machine identifier
      * @param processIdentifier the process identifier
      * @param counter the counter in this jvm
-     * @param checkCounter whether or not need check counter
      */
-    private UniqueId(final int timestamp, final long machineIdentifier, final short processIdentifier, final int counter, final boolean checkCounter) {
-        long current = LAST_TIMESTAMP.get();
-
-        if ((timestamp & 0xffffffffL) == (current & 0xffffffffL)) {
-        // @formatter:off
-        // mostly   
-        // @formatter:on
-
-            this.timestamp = timestamp;
-            this.counter = counter & LOW_ORDER_THREE_BYTES;
-
-        } else if ((timestamp & 0xffffffffL) > (current & 0xffffffffL)) {
-        // @formatter:off
-        // once per second or less
-        // @formatter:on    
-            synchronized (UniqueId.class) {
-                current = LAST_TIMESTAMP.get();
-                if ((timestamp & 0xffffffffL) > (current & 0xffffffffL)) {
-                    LAST_TIMESTAMP.set(timestamp & 0xffffffffL);
-                    this.timestamp = timestamp;
-                    this.counter = counter & LOW_ORDER_THREE_BYTES;
-                } else if ((timestamp & 0xffffffffL) == (current & 0xffffffffL)) {
-                    this.timestamp = timestamp;
-                    this.counter = counter & LOW_ORDER_THREE_BYTES;
-                } else if ((current & 0xffffffffL) - (timestamp & 0xffffffffL) == 1L) {
-                    this.timestamp = (int) current;
-                    this.counter = counter & LOW_ORDER_THREE_BYTES;
-                } else {
-                    this.timestamp = (int) current;
-                    this.counter = NEXT_COUNTER.getAndIncrement() & LOW_ORDER_THREE_BYTES;
-                }
-            }
-        } else {
-        // @formatter:off
-        //((timestamp & 0xffffffffL) < (current & 0xffffffffL))
-        // hardly
-        // @formatter:on    
-            synchronized (UniqueId.class) {
-                current = LAST_TIMESTAMP.get();
-                if ((current & 0xffffffffL) - (timestamp & 0xffffffffL) == 1L) {
-                // @formatter:off
-                // LAST_TIMESTAMP increased after timestamp generated
-                // @formatter:on  
-
-                } else if (((LAST_TIMESTAMP.get() & 0xffffffffL) - (timestamp & 0xffffffffL)) >= 0x7fffffffL) {
-                    // timestamp is in the new round of zero to 0xffffffffL. 0x7fffffffL is half of 0xffffffffL.
-                    // A round is about 69 years, so the gap between last timestamp in the last round and new timestamp in this round will not less then 34
-                    // years.
-                    LAST_TIMESTAMP.set(timestamp & 0xffffffffL);
-                } else {
-                    // System.err.println(((LAST_TIMESTAMP.get() & 0xffffffffL) - (timestamp & 0xffffffffL)));
-                    // System.err.println(timestamp);
-                    // System.err.println(current);
-                    // System.err.println(LAST_TIMESTAMP.get());
-                    throw new IllegalArgumentException(
-                            "The timestamp must not be less then the timestamp last time. (Maybe the machine correct time using time server).");
-                }
-            }
-            this.counter = counter & LOW_ORDER_THREE_BYTES;
-            this.timestamp = timestamp;
-        }
-        if (((machineIdentifier >> 32) & 0xff000000) != 0) {
-            throw new IllegalArgumentException("The machine identifier must be between 0 and 28139015110655 (it must fit in six bytes).");
-        }
-        if (checkCounter && ((counter & 0xff000000) != 0)) {
-            throw new IllegalArgumentException("The counter must be between 0 and 16777215 (it must fit in three bytes).");
-        }
+    private UniqueId(final int timestamp, final long machineIdentifier, final short processIdentifier, final int counter) {
+        this.timestamp = timestamp;
         this.machineIdentifier = machineIdentifier;
         this.processIdentifier = processIdentifier;
+        this.counter = counter & LOW_ORDER_THREE_BYTES;
+    }
+
+    /**
+     * Constructs a new instance from the fields without any check, for the codecs of this package.
+     *
+     * @param timestamp of second
+     * @param machineIdentifier the machine identifier, six bytes
+     * @param processIdentifier the process identifier
+     * @param counter the counter, the low three bytes are used
+     * @return new UniqueId instance
+     */
+    static UniqueId fromFields(final int timestamp, final long machineIdentifier, final short processIdentifier, final int counter) {
+        return new UniqueId(timestamp, machineIdentifier, processIdentifier, counter);
+    }
+
+    /**
+     * Generates a batch of new ids with one counter reservation.
+     * 
+     * <p>
+     * In the default counter mode it generates no more ids then the counters left in the current second (approximately, as it is not synchronized with
+     * other generating threads), so the counter does not wrap around within a second. The caller could generate the rest in the next second.
+     * </p>
+     *
+     * @param ids the array to fill
+     * @param offset the first index to fill
+     * @param length the number of ids wanted
+     * @return the number of ids generated, 0 if no counter is left in the current second
+     */
+    static int nextBatch(final UniqueId[] ids, final int offset, final int length) {
+        return SEQUENCER.nextBatch(ids, offset, length, MACHINE_IDENTIFIER, PROCESS_IDENTIFIER);
     }
 
     /**
@@ -299,7 +293,12 @@ public final class UniqueId implements Comparable<UniqueId>, Serializable {
      * @return new UniqueId instance
      */
     public static UniqueId fromHexString(final String hexString) {
-        return new UniqueId(parseHexString(hexString));
+        UniqueId uniqueId = new UniqueId(parseHexString(hexString));
+        if (isLowerCase(hexString)) {
+            // the same as toHexString(), keep it so re-encoding is free
+            uniqueId.hexString = hexString;
+        }
+        return uniqueId;
     }
 
     /**
@@ -309,7 +308,55 @@ public final class UniqueId implements Comparable<UniqueId>, Serializable {
      * @return new UniqueId instance
      */
     public static UniqueId fromBase64String(final String base64String) {
-        return new UniqueId(parseBase64String(base64String));
+        UniqueId uniqueId = new UniqueId(parseBase64String(base64String, false));
+        // 20 base64 characters are exactly 15 bytes, so it is the same as toBase64String(), keep it so re-encoding is free
+        uniqueId.base64String = base64String;
+        return uniqueId;
+    }
+
+    /**
+     * Constructs a new instance from a 40-byte sortable base64 encoding string representation.
+     *
+     * @param sortableBase64String the string to convert
+     * @return new UniqueId instance
+     * @see #toSortableBase64String()
+     */
+    public static UniqueId fromSortableBase64String(final String sortableBase64String) {
+        return new UniqueId(parseBase64String(sortableBase64String, true));
+    }
+
+    /**
+     * Gets the least {@code UniqueId} of the given second, as the lower bound (inclusive) of a time range query.
+     * 
+     * <p>
+     * The bound sorts correctly with {@link #compareTo(UniqueId)}, {@link #toByteArray()} (unsigned), {@link #toHexString()} and
+     * {@link #toSortableBase64String()}, but not with {@link #toBase64String()} as the base64 URL safe alphabet is not in ASCII order.
+     * </p>
+     *
+     * @param instant the instant, truncated to second
+     * @return the least UniqueId of the second
+     * @throws IllegalArgumentException if instant is null, before the Unix epoch or not before 2106-02-07T06:28:16Z (2^32 seconds after the Unix epoch,
+     *             where the timestamp of 4 bytes would wrap around)
+     */
+    public static UniqueId minForTime(final Instant instant) {
+        return new UniqueId(instantToTimestampSeconds(instant), 0L, (short) 0, 0);
+    }
+
+    /**
+     * Gets the greatest {@code UniqueId} of the given second, as the upper bound (inclusive) of a time range query.
+     * 
+     * <p>
+     * The bound sorts correctly with {@link #compareTo(UniqueId)}, {@link #toByteArray()} (unsigned), {@link #toHexString()} and
+     * {@link #toSortableBase64String()}, but not with {@link #toBase64String()} as the base64 URL safe alphabet is not in ASCII order.
+     * </p>
+     *
+     * @param instant the instant, truncated to second
+     * @return the greatest UniqueId of the second
+     * @throws IllegalArgumentException if instant is null, before the Unix epoch or not before 2106-02-07T06:28:16Z (2^32 seconds after the Unix epoch,
+     *             where the timestamp of 4 bytes would wrap around)
+     */
+    public static UniqueId maxForTime(final Instant instant) {
+        return new UniqueId(instantToTimestampSeconds(instant), 0x0000ffffffffffffL, (short) 0xffff, LOW_ORDER_THREE_BYTES);
     }
 
     /**
@@ -324,10 +371,36 @@ public final class UniqueId implements Comparable<UniqueId>, Serializable {
         if (bytes.length != 15) {
             throw new IllegalArgumentException("Argument need 15 bytes");
         }
-        timestamp = bytes2int(Arrays.copyOfRange(bytes, 0, 4));
-        machineIdentifier = bytes2long(Arrays.copyOfRange(bytes, 4, 10));
-        processIdentifier = (short) bytes2int(Arrays.copyOfRange(bytes, 10, 12));
-        counter = bytes2int(Arrays.copyOfRange(bytes, 12, 15));
+        timestamp = UniqueIdPlatform.getInt(bytes, 0);
+        long machineAndProcess = UniqueIdPlatform.getLong(bytes, 4);
+        machineIdentifier = machineAndProcess >>> 16;
+        processIdentifier = (short) machineAndProcess;
+        counter = UniqueIdPlatform.getInt(bytes, 11) & LOW_ORDER_THREE_BYTES;
+    }
+
+    /**
+     * Constructs a new instance from 15 bytes in a byte array.
+     *
+     * @param bytes the byte array
+     * @param offset the index of the first byte
+     */
+    private UniqueId(final byte[] bytes, final int offset) {
+        timestamp = UniqueIdPlatform.getInt(bytes, offset);
+        // machine (6 bytes) and pid (2 bytes) in a long, the counter (3 bytes) in an int with the low byte of pid
+        long machineAndProcess = UniqueIdPlatform.getLong(bytes, offset + 4);
+        machineIdentifier = machineAndProcess >>> 16;
+        processIdentifier = (short) machineAndProcess;
+        counter = UniqueIdPlatform.getInt(bytes, offset + 11) & LOW_ORDER_THREE_BYTES;
+    }
+
+    /**
+     * Gets the layout of the id.
+     *
+     * @return {@link UniqueIdLayout#SECOND}
+     */
+    @Override
+    public UniqueIdLayout getLayout() {
+        return UniqueIdLayout.SECOND;
     }
 
     /**
@@ -337,28 +410,280 @@ public final class UniqueId implements Comparable<UniqueId>, Serializable {
      */
     public byte[] toByteArray() {
         byte[] bytes = new byte[15];
-        byte[] temp = int2bytes(timestamp);
-        bytes[0] = temp[0];
-        bytes[1] = temp[1];
-        bytes[2] = temp[2];
-        bytes[3] = temp[3];
-        temp = long2bytes(machineIdentifier);
-        bytes[4] = temp[2];
-        bytes[5] = temp[3];
-        bytes[6] = temp[4];
-        bytes[7] = temp[5];
-        bytes[8] = temp[6];
-        bytes[9] = temp[7];
-        temp = int2bytes(processIdentifier);
-        bytes[10] = temp[2];
-        bytes[11] = temp[3];
-        temp = int2bytes(counter);
-        bytes[12] = temp[1];
-        bytes[13] = temp[2];
-        bytes[14] = temp[3];
+        putBytes(bytes, 0);
         return bytes;
     }
 
+    /**
+     * Puts the 15 bytes of {@link #toByteArray()} into a byte array.
+     *
+     * @param bytes the byte array
+     * @param offset the index of the first byte
+     */
+    private void putBytes(final byte[] bytes, final int offset) {
+        UniqueIdPlatform.putInt(bytes, offset, timestamp);
+        UniqueIdPlatform.putLong(bytes, offset + 4, machineIdentifier << 16 | processIdentifier & 0xffffL);
+        // the low byte of pid again, then the counter
+        UniqueIdPlatform.putInt(bytes, offset + 11, processIdentifier << 24 | counter & LOW_ORDER_THREE_BYTES);
+    }
+
+    /**
+     * Writes the 15 bytes of {@link #toByteArray()}.
+     *
+     * @param out the output
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+        byte[] bytes = new byte[15];
+        putBytes(bytes, 0);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a new instance written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in the input
+     * @return new UniqueId instance
+     * @throws IOException if an I/O error occurs
+     */
+    public static UniqueId readFrom(final DataInput in) throws IOException {
+        byte[] bytes = new byte[15];
+        in.readFully(bytes);
+        return new UniqueId(bytes, 0);
+    }
+
+    /**
+     * Writes the number of ids (an int) and 15 bytes per id, through one reused buffer.
+     *
+     * @param out the output
+     * @param ids the UniqueIds
+     * @throws IOException if an I/O error occurs
+     */
+    public static void writeAll(final DataOutput out, final UniqueId[] ids) throws IOException {
+        writeAll(out, Arrays.asList(ids));
+    }
+
+    /**
+     * Writes the number of ids (an int) and 15 bytes per id, through one reused buffer.
+     *
+     * @param out the output
+     * @param ids the UniqueIds
+     * @throws IOException if an I/O error occurs
+     */
+    public static void writeAll(final DataOutput out, final Collection<UniqueId> ids) throws IOException {
+        out.writeInt(ids.size());
+        byte[] buffer = new byte[15 * Math.min(BULK_BUFFER_IDS, Math.max(1, ids.size()))];
+        int length = 0;
+        for (UniqueId id : ids) {
+            if (length == buffer.length) {
+                out.write(buffer, 0, length);
+                length = 0;
+            }
+            id.putBytes(buffer, length);
+            length += 15;
+        }
+        out.write(buffer, 0, length);
+    }
+
+    /**
+     * Reads new instances written by {@link #writeAll(DataOutput, Collection)}, through one reused buffer.
+     *
+     * @param in the input
+     * @return the UniqueIds in the written order
+     * @throws IOException if an I/O error occurs, the number of ids is negative or more then the ids written
+     */
+    public static UniqueId[] readAll(final DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Invalid number of ids:" + size);
+        }
+        // the size is not trusted until the ids are read, a corrupt one ends with an EOFException instead of a huge array
+        UniqueId[] ids = new UniqueId[Math.min(size, BULK_READ_IDS)];
+        byte[] buffer = new byte[15 * Math.min(BULK_BUFFER_IDS, Math.max(1, size))];
+        for (int i = 0; i < size;) {
+            int n = Math.min(size - i, BULK_BUFFER_IDS);
+            in.readFully(buffer, 0, n * 15);
+            if (i + n > ids.length) {
+                ids = Arrays.copyOf(ids, (int) Math.min(size, Math.max(i + n, 2L * ids.length)));
+            }
+            for (int j = 0; j < n; j++) {
+                ids[i++] = new UniqueId(buffer, j * 15);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Converts this instance into a {@code UUID}.
+     * 
+     * <p>
+     * The 120 bits of the id are spread over the 128 bits with the highest bit of both longs and the lowest 6 bits zero, so the mapping is reversible and
+     * preserves the order of {@link #compareTo(UniqueId)} both for {@link UUID#compareTo(UUID)} (signed longs) and for the 16 bytes compared unsigned
+     * (like the uuid type of most databases). The UUID is not a RFC 4122 one, its version and variant bits are not meaningful.
+     * </p>
+     *
+     * @return the UUID
+     */
+    public UUID toUUID() {
+        return new UUID(mostSignificantBits(), leastSignificantBits());
+    }
+
+    /**
+     * Convert to the 16 bytes (big endian) of {@link #toUUID()}.
+     *
+     * @return the 16 bytes array
+     */
+    public byte[] toUUIDByteArray() {
+        byte[] bytes = new byte[16];
+        putUUIDBytes(bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * Constructs a new instance from a {@code UUID} converted by {@link #toUUID()}.
+     *
+     * @param uuid the UUID
+     * @return new UniqueId instance
+     * @throws IllegalArgumentException if uuid is null or not converted from an UniqueId
+     */
+    public static UniqueId fromUUID(final UUID uuid) {
+        if (uuid == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        return fromUUIDBits(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Constructs a new instance from the 16 bytes converted by {@link #toUUIDByteArray()}.
+     *
+     * @param bytes the 16 bytes array
+     * @return new UniqueId instance
+     * @throws IllegalArgumentException if bytes is null or not converted from an UniqueId
+     */
+    public static UniqueId fromUUIDByteArray(final byte[] bytes) {
+        if (bytes == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        if (bytes.length != 16) {
+            throw new IllegalArgumentException("Argument need 16 bytes");
+        }
+        return fromUUIDBytes(bytes, 0);
+    }
+
+    /**
+     * Converts instances into {@code UUID}s.
+     *
+     * @param ids the UniqueIds
+     * @return the UUIDs in the same order
+     * @see #toUUID()
+     */
+    public static UUID[] toUUIDs(final UniqueId... ids) {
+        UUID[] uuids = new UUID[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            uuids[i] = ids[i].toUUID();
+        }
+        return uuids;
+    }
+
+    /**
+     * Constructs new instances from {@code UUID}s.
+     *
+     * @param uuids the UUIDs
+     * @return the UniqueIds in the same order
+     * @see #fromUUID(UUID)
+     */
+    public static UniqueId[] fromUUIDs(final UUID... uuids) {
+        UniqueId[] ids = new UniqueId[uuids.length];
+        for (int i = 0; i < uuids.length; i++) {
+            ids[i] = fromUUID(uuids[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * Converts instances into one byte array of 16 bytes per id, for bulk writing into fixed 16 bytes key columns.
+     *
+     * @param ids the UniqueIds
+     * @return the byte array
+     * @see #toUUIDByteArray()
+     */
+    public static byte[] toPackedUUIDByteArray(final UniqueId... ids) {
+        byte[] bytes = new byte[ids.length * 16];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i].putUUIDBytes(bytes, i * 16);
+        }
+        return bytes;
+    }
+
+    /**
+     * Constructs new instances from one byte array of 16 bytes per id.
+     *
+     * @param bytes the byte array
+     * @return the UniqueIds in the same order
+     * @throws IllegalArgumentException if bytes is null or the length is not a multiple of 16
+     * @see #fromUUIDByteArray(byte[])
+     */
+    public static UniqueId[] fromPackedUUIDByteArray(final byte[] bytes) {
+        if (bytes == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        if (bytes.length % 16 != 0) {
+            throw new IllegalArgumentException("Argument need a multiple of 16 bytes");
+        }
+        UniqueId[] ids = new UniqueId[bytes.length / 16];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = fromUUIDBytes(bytes, i * 16);
+        }
+        return ids;
+    }
+
+    /**
+     * Gets the most significant 64 bits of the UUID form: zero and the first 63 bits of the 15 bytes.
+     *
+     * @return the most significant bits
+     */
+    long mostSignificantBits() {
+        return ((timestamp & 0xffffffffL) << 32 | machineIdentifier >>> 16) >>> 1;
+    }
+
+    /**
+     * Gets the least significant 64 bits of the UUID form: zero, the last 57 bits of the 15 bytes and 6 zero bits.
+     *
+     * @return the least significant bits
+     */
+    long leastSignificantBits() {
+        return (machineIdentifier & 1L << 16) << 46 | (machineIdentifier & 0xffffL) << 46 | (processIdentifier & 0xffffL) << 30 | (long) counter << 6;
+    }
+
+    private void putUUIDBytes(final byte[] bytes, final int offset) {
+        long msb = mostSignificantBits();
+        long lsb = leastSignificantBits();
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) msb;
+            bytes[offset + 8 + i] = (byte) lsb;
+            msb >>>= 8;
+            lsb >>>= 8;
+        }
+    }
+
+    private static UniqueId fromUUIDBytes(final byte[] bytes, final int offset) {
+        long msb = 0;
+        long lsb = 0;
+        for (int i = 0; i < 8; i++) {
+            msb = msb << 8 | (bytes[offset + i] & 0xff);
+            lsb = lsb << 8 | (bytes[offset + 8 + i] & 0xff);
+        }
+        return fromUUIDBits(msb, lsb);
+    }
+
+    private static UniqueId fromUUIDBits(final long msb, final long lsb) {
+        if (msb < 0 || lsb < 0 || (lsb & 0x3fL) != 0) {
+            throw new IllegalArgumentException("The UUID is not converted from an UniqueId.");
+        }
+        long high = msb << 1 | lsb >>> 62;
+        return new UniqueId((int) (high >>> 32), (high & 0xffffffffL) << 16 | (lsb >>> 46 & 0xffffL), (short) (lsb >>> 30), (int) (lsb >>> 6));
+    }
+
     /**
      * Gets the timestamp (number of seconds since the Unix epoch).
      *
@@ -400,6 +725,7 @@ public final class UniqueId implements Comparable<UniqueId>, Serializable {
      * Gets the timestamp as a {@code Date} instance.
      *
      * @return the Date
+     * @throws IllegalArgumentException if the timestamp is after now
      */
     public Date getDate() {
         return getDate(new Date().getTime());
@@ -436,28 +762,127 @@ public final class UniqueId implements Comparable<UniqueId>, Serializable {
     }
 
     /**
-     * Converts this instance into a 60-byte hexadecimal string representation.
+     * Gets the number of seconds since the Unix epoch, in the round of 2^32 seconds nearest to now.
      *
-     * @return a string representation of the UniqueId in hexadecimal format
+     * @return the epoch second
+     * @see #getEpochSecond(long)
      */
-    public String toHexString() {
-        return toHexString(toByteArray());
+    public long getEpochSecond() {
+        return toEpochSecond(timestamp, System.currentTimeMillis() / 1000L);
     }
 
     /**
-     * Converts byte array into a hexadecimal string representation.
+     * Gets the number of seconds since the Unix epoch, in the round of 2^32 seconds nearest to the reference time.
      * 
-     * @param bytes the byte array
-     * @return a string
+     * <p>
+     * The timestamp keeps the low 32 bits of the epoch second only, so the round is chosen by a reference time less then about 68 years from the
+     * timestamp. Unlike {@link #getDate()} a timestamp after the reference time is not an error (e.g. the clock of the generator was ahead). A job
+     * processing many ids could read the clock once and pass it to every call.
+     * </p>
+     *
+     * @param referenceEpochSecond the reference time in seconds since the Unix epoch
+     * @return the epoch second
+     */
+    public long getEpochSecond(final long referenceEpochSecond) {
+        return toEpochSecond(timestamp, referenceEpochSecond);
+    }
+
+    /**
+     * Gets the timestamp as an {@code Instant}, in the round of 2^32 seconds nearest to now.
+     *
+     * @return the Instant
+     * @see #getEpochSecond(long)
+     */
+    public Instant getInstant() {
+        return Instant.ofEpochSecond(getEpochSecond());
+    }
+
+    /**
+     * Gets the timestamp as an {@code Instant}, in the round of 2^32 seconds nearest to the reference time.
+     *
+     * @param referenceEpochSecond the reference time in seconds since the Unix epoch
+     * @return the Instant
+     * @see #getEpochSecond(long)
+     */
+    public Instant getInstant(final long referenceEpochSecond) {
+        return Instant.ofEpochSecond(toEpochSecond(timestamp, referenceEpochSecond));
+    }
+
+    /**
+     * Gets the epoch seconds of hexadecimal or base64 string representations, decoding the timestamp characters only.
+     * 
+     * <p>
+     * The representation is told by the length as {@link #isValid(String)} does. Only the first 8 hexadecimal or 6 base64 characters are decoded,
+     * the others are not checked.
+     * </p>
+     *
+     * @param referenceEpochSecond the reference time in seconds since the Unix epoch, see {@link #getEpochSecond(long)}
+     * @param idStrings the hexadecimal (base16) or base64 strings
+     * @return the epoch seconds, in the order of the strings
+     * @throws IllegalArgumentException if idStrings or a string is null, or a string could not be an UniqueId
+     */
+    public static long[] getEpochSeconds(final long referenceEpochSecond, final String... idStrings) {
+        return getEpochSeconds(referenceEpochSecond, false, idStrings);
+    }
+
+    /**
+     * Gets the epoch seconds of hexadecimal or sortable base64 string representations, decoding the timestamp characters only.
+     *
+     * @param referenceEpochSecond the reference time in seconds since the Unix epoch, see {@link #getEpochSecond(long)}
+     * @param idStrings the hexadecimal (base16) or sortable base64 strings
+     * @return the epoch seconds, in the order of the strings
+     * @throws IllegalArgumentException if idStrings or a string is null, or a string could not be an UniqueId
+     * @see #getEpochSeconds(long, String...)
+     * @see #toSortableBase64String()
+     */
+    public static long[] getEpochSecondsOfSortable(final long referenceEpochSecond, final String... idStrings) {
+        return getEpochSeconds(referenceEpochSecond, true, idStrings);
+    }
+
+    private static long[] getEpochSeconds(final long referenceEpochSecond, final boolean sortable, final String... idStrings) {
+        if (idStrings == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        long[] epochSeconds = new long[idStrings.length];
+        for (int i = 0; i < idStrings.length; i++) {
+            final String s = idStrings[i];
+            if (s == null) {
+                throw new IllegalArgumentException("Argument should not be null!");
+            }
+            final long timestamp;
+            if (s.length() == 30) {
+                timestamp = UniqueIdCodec.parseHexTimestamp(s);
+            } else if (s.length() == 20) {
+                timestamp = UniqueIdCodec.parseBase64Timestamp(s, sortable);
+            } else {
+                throw new IllegalArgumentException("invalid representation of an UniqueId: [" + s + "]");
+            }
+            epochSeconds[i] = toEpochSecond((int) timestamp, referenceEpochSecond);
+        }
+        return epochSeconds;
+    }
+
+    /**
+     * Gets the epoch second of a timestamp in the round of 2^32 seconds nearest to the reference time, never before the Unix epoch.
      */
-    private static String toHexString(byte[] bytes) {
-        char[] chars = new char[bytes.length * 2];
-        int i = 0;
-        for (byte b : bytes) {
-            chars[i++] = HEX_CHARS[b >> 4 & 0xf];
-            chars[i++] = HEX_CHARS[b & 0xf];
+    private static long toEpochSecond(final int timestamp, final long referenceEpochSecond) {
+        // the signed difference in the circle of 2^32 seconds
+        final long epochSecond = referenceEpochSecond + (int) (timestamp - referenceEpochSecond);
+        return epochSecond < 0 ? epochSecond + 0x100000000L : epochSecond;
+    }
+
+    /**
+     * Converts this instance into a 60-byte hexadecimal string representation.
+     *
+     * @return a string representation of the UniqueId in hexadecimal format
+     */
+    public String toHexString() {
+        String s = hexString;
+        if (s == null) {
+            s = UniqueIdCodec.toHexString(toByteArray());
+            hexString = s;
         }
-        return new String(chars);
+        return s;
     }
 
     /**
@@ -466,7 +891,27 @@ public final class UniqueId implements Comparable<UniqueId>, Serializable {
      * @return a string representation of the UniqueId in base64 format
      */
     public String toBase64String() {
-        return Base64.getUrlEncoder().encodeToString(toByteArray());
+        String s = base64String;
+        if (s == null) {
+            s = UniqueIdCodec.toBase64String(toByteArray(), false);
+            base64String = s;
+        }
+        return s;
+    }
+
+    /**
+     * Converts this instance into a 40-byte sortable base64 string representation.
+     * 
+     * <p>
+     * It uses the same 64 URL safe characters as {@link #toBase64String()} but in ASCII order ({@code -0-9A-Z_a-z}), so the strings sort the same as
+     * {@link #compareTo(UniqueId)}. Both representations have the same length and characters, so they could not be told apart: a system should use one
+     * of them consistently (and parse with the matching from method).
+     * </p>
+     *
+     * @return a string representation of the UniqueId in sortable base64 format
+     */
+    public String toSortableBase64String() {
+        return UniqueIdCodec.toBase64String(toByteArray(), true);
     }
 
     @Override
@@ -526,9 +971,61 @@ public final class UniqueId implements Comparable<UniqueId>, Serializable {
         return toBase64String();
     }
 
+    /**
+     * Serializes the 15 bytes only, see {@link SerializationProxy}.
+     *
+     * @return the serialization proxy
+     * @throws ObjectStreamException never
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return new SerializationProxy(this);
+    }
+
+    /**
+     * <p>
+     * The compact serialized form of {@code UniqueId}: exactly the 15 bytes of {@link UniqueId#toByteArray()} instead of the class descriptor and the
+     * four named fields of the default form.
+     * </p>
+     * <p>
+     * The default form written by the former versions is still readable, as UniqueId keeps its serialVersionUID and fields.
+     * </p>
+     */
+    private static final class SerializationProxy implements Externalizable {
+
+        private static final long serialVersionUID = 1L;
+
+        private UniqueId uniqueId;
+
+        /**
+         * Constructs a new instance for deserialization.
+         */
+        public SerializationProxy() {
+        }
+
+        SerializationProxy(final UniqueId uniqueId) {
+            this.uniqueId = uniqueId;
+        }
+
+        @Override
+        public void writeExternal(final ObjectOutput out) throws IOException {
+            uniqueId.writeTo(out);
+        }
+
+        @Override
+        public void readExternal(final ObjectInput in) throws IOException {
+            uniqueId = readFrom(in);
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            return uniqueId;
+        }
+    }
+
     static {
         MACHINE_IDENTIFIER = createMachineIdentifier();
         PROCESS_IDENTIFIER = createProcessIdentifier();
+        UniqueIdSequencer.register(SEQUENCER.getMode(), System.getProperty(UniqueIdSequencer.REGISTRY_PROPERTY),
+                System.getProperty(UniqueIdSequencer.OWNER_PROPERTY), MACHINE_IDENTIFIER, PROCESS_IDENTIFIER);
     }
 
     /**
@@ -556,12 +1053,12 @@ public final class UniqueId implements Comparable<UniqueId>, Serializable {
             throw new RuntimeException("Could not get MAC address", t);
         }
         if (mac != null && mac.length == 6 && mac[1] != (byte) 0xff) {
-            return bytes2long(mac);
+            return bytes2long(mac, 0, mac.length);
         } else {
             if (null == mac) {
                 throw new RuntimeException("Could not get MAC address!");
             } else {
-                throw new RuntimeException("MAC address is not correct:" + toHexString(mac));
+                throw new RuntimeException("MAC address is not correct:" + UniqueIdCodec.toHexString(mac));
             }
         }
 
@@ -575,13 +1072,7 @@ public final class UniqueId implements Comparable<UniqueId>, Serializable {
     private static short createProcessIdentifier() {
         short processId;
         try {
-            String processName = java.lang.management.ManagementFactory.getRuntimeMXBean().getName();
-            if (processName.contains("@")) {
-                processId = (short) Integer.parseInt(processName.substring(0, processName.indexOf('@')));
-            } else {
-                throw new Throwable("Process name:'" + processName + "' is invalid!");
-            }
-
+            processId = (short) UniqueIdPlatform.processId();
         } catch (Throwable t) {
             throw new RuntimeException(t);
         }
@@ -596,70 +1087,53 @@ public final class UniqueId implements Comparable<UniqueId>, Serializable {
      * @return
      */
     private static byte[] parseHexString(final String s) {
-        if (!isValid(s)) {
+        if (!isValid(s) || s.length() != 30) {
             throw new IllegalArgumentException("invalid hexadecimal representation of an UniqueId: [" + s + "]");
         }
 
-        byte[] b = new byte[15];
-        for (int i = 0; i < b.length; i++) {
-            b[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
-        }
-        return b;
+        return UniqueIdCodec.parseHexString(s);
     }
 
     /**
      * Parse the base64 String to byte array.
      * 
      * @param s the base64 string
+     * @param sortable whether or not the string is in sortable base64
      */
-    private static byte[] parseBase64String(final String s) {
-        if (!isValid(s)) {
+    private static byte[] parseBase64String(final String s, final boolean sortable) {
+        if (!isValid(s) || s.length() != 20) {
             throw new IllegalArgumentException("invalid hexadecimal representation of an UniqueId: [" + s + "]");
         }
 
-        return Base64.getUrlDecoder().decode(s);
+        return UniqueIdCodec.parseBase64String(s, 15, sortable);
     }
 
-    private static int dateToTimestampSeconds(final Date time) {
-        return (int) ((time.getTime() / 1000L) & 0xffffffffL);
-    }
-
-    private static byte[] int2bytes(final int num) {
-        byte[] bytes = new byte[4];
-        for (int ix = 0; ix < 4; ++ix) {
-            int offset = 32 - (ix + 1) * 8;
-            bytes[ix] = (byte) ((num >> offset) & 0xff);
+    private static boolean isLowerCase(final String hexString) {
+        for (int i = 0; i < hexString.length(); i++) {
+            char c = hexString.charAt(i);
+            if (c >= 'A' && c <= 'F') {
+                return false;
+            }
         }
-        return bytes;
+        return true;
     }
 
-    private static int bytes2int(final byte[] bytes) {
-        if (bytes.length > 4) {
-            throw new RuntimeException("byteNum is too long for a int type:" + bytes.length);
+    private static int instantToTimestampSeconds(final Instant instant) {
+        if (instant == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
         }
-        int num = 0;
-        for (int ix = 0; ix < bytes.length; ++ix) {
-            num <<= 8;
-            num |= (bytes[ix] & 0xff);
+        if (instant.getEpochSecond() < 0) {
+            throw new IllegalArgumentException("The instant must not be before the Unix epoch.");
         }
-        return num;
-    }
-
-    private static byte[] long2bytes(final long num) {
-        byte[] bytes = new byte[8];
-        for (int ix = 0; ix < 8; ++ix) {
-            int offset = 64 - (ix + 1) * 8;
-            bytes[ix] = (byte) ((num >> offset) & 0xff);
+        if (instant.getEpochSecond() > 0xffffffffL) {
+            throw new IllegalArgumentException("The instant must be before 2106-02-07T06:28:16Z.");
         }
-        return bytes;
+        return (int) instant.getEpochSecond();
     }
 
-    private static long bytes2long(final byte[] bytes) {
-        if (bytes.length > 8) {
-            throw new RuntimeException("byteNum is too long for a long type:" + bytes.length);
-        }
+    private static long bytes2long(final byte[] bytes, final int offset, final int length) {
         long num = 0;
-        for (int ix = 0; ix < bytes.length; ++ix) {
+        for (int ix = offset; ix < offset + length; ++ix) {
             num <<= 8;
             num |= (bytes[ix] & 0xff); // byte become 64bit since the index 1 with higher bit 1? & 0xff make higher bit 0
         }
@@ -0,0 +1,680 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fintx.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * Audits the uniqueness of the generator identities (machine identifier and process identifier) across a cluster from the id logs of the generators.
+ * </p>
+ *
+ * <p>
+ * The uniqueness rests on the identity: cloned MAC addresses of containers or the pids truncated to 16 bits could give two generators the same one
+ * silently. Each source is the log of the ids generated by one generator (one id per line, the first token of the line, base64 or hexadecimal). The
+ * sources are read in parallel by up to the parallelism threads, the counters are aggregated by (machine, pid, second) into one range per source, and
+ * two sources with ids of the same (machine, pid, second) are reported as a {@link Collision}: the generators share an identity. If their counter
+ * ranges overlap, duplicate ids are likely generated. The counter ranges are arcs of the counter circle, so a range wrapping around 16777215 is
+ * handled.
+ * </p>
+ *
+ * <p>
+ * The memory is bounded by a watermark: the logs are expected in time order (as written), and the seconds more then the lateness behind the slowest
+ * source are checked and dropped. The ids behind the watermark are counted as late, and checked by themselves. A source waiting for a thread holds
+ * the watermark back until it starts, so with more sources then the parallelism the seconds of the sources read first are kept in memory.
+ * </p>
+ *
+ */
+public final class UniqueIdAuditor {
+
+    private static final int COUNTER_MODULUS = 0x01000000;
+
+    private static final int SWEEP_INTERVAL = 4096;
+
+    private static final int DEFAULT_PARALLELISM = 64;
+
+    private final int latenessSeconds;
+
+    private final int maxCollisions;
+
+    private final UniqueIdRegistry registry;
+
+    private final int parallelism;
+
+    /**
+     * Constructs an auditor with 60 seconds of lateness, 1000 reported collisions at most, no registry and up to 64 sources read in parallel.
+     */
+    public UniqueIdAuditor() {
+        this(60, 1000, null);
+    }
+
+    /**
+     * Constructs an auditor with up to 64 sources read in parallel.
+     *
+     * @param latenessSeconds how far (in seconds) the ids of a source could be behind its latest id
+     * @param maxCollisions the max number of collisions reported, the others are counted only
+     * @param registry the registry to get the owners of the identities, null if none
+     * @throws IllegalArgumentException if latenessSeconds is negative or maxCollisions is not positive
+     */
+    public UniqueIdAuditor(final int latenessSeconds, final int maxCollisions, final UniqueIdRegistry registry) {
+        this(latenessSeconds, maxCollisions, registry, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Constructs an auditor.
+     *
+     * @param latenessSeconds how far (in seconds) the ids of a source could be behind its latest id
+     * @param maxCollisions the max number of collisions reported, the others are counted only
+     * @param registry the registry to get the owners of the identities, null if none
+     * @param parallelism the max number of sources read in parallel, i.e. the threads of an audit
+     * @throws IllegalArgumentException if latenessSeconds is negative, or maxCollisions or parallelism is not positive
+     */
+    public UniqueIdAuditor(final int latenessSeconds, final int maxCollisions, final UniqueIdRegistry registry, final int parallelism) {
+        if (latenessSeconds < 0 || maxCollisions <= 0) {
+            throw new IllegalArgumentException("The lateness must not be negative and the max collisions must be positive.");
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("The parallelism must be positive.");
+        }
+        this.latenessSeconds = latenessSeconds;
+        this.maxCollisions = maxCollisions;
+        this.registry = registry;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Audits log files, the file names are the source names.
+     *
+     * @param logs the log files of the generators, UTF-8
+     * @return the report
+     * @throws IOException if an I/O error occurs
+     * @throws InterruptedException if interrupted while waiting for the sources
+     */
+    public Report audit(final Path... logs) throws IOException, InterruptedException {
+        Map<String, Source> sources = new LinkedHashMap<String, Source>();
+        for (Path log : logs) {
+            sources.put(log.toString(), () -> Files.newBufferedReader(log, StandardCharsets.UTF_8));
+        }
+        return audit(sources);
+    }
+
+    /**
+     * Audits sources.
+     *
+     * @param sources the sources by name, each is opened and closed once
+     * @return the report
+     * @throws IOException if an I/O error occurs
+     * @throws InterruptedException if interrupted while waiting for the sources
+     */
+    public Report audit(final Map<String, ? extends Source> sources) throws IOException, InterruptedException {
+        if (sources == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        Audit audit = new Audit(new ArrayList<String>(sources.keySet()));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, sources.size())), r -> {
+            Thread t = new Thread(r, "UniqueIdAuditor");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            int index = 0;
+            for (Source source : sources.values()) {
+                final int sourceIndex = index++;
+                futures.add(executor.submit(() -> {
+                    try (Reader reader = source.open()) {
+                        audit.read(sourceIndex, reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof UncheckedIOException) {
+                        throw ((UncheckedIOException) e.getCause()).getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        audit.finish();
+        return audit.report();
+    }
+
+    /**
+     * A source of id log lines.
+     */
+    @FunctionalInterface
+    public interface Source {
+
+        /**
+         * Opens the source.
+         *
+         * @return the reader of the lines
+         * @throws IOException if an I/O error occurs
+         */
+        Reader open() throws IOException;
+    }
+
+    /**
+     * The ids of two or more sources with the same machine, pid and second.
+     */
+    public static final class Collision {
+
+        private final long machineIdentifier;
+
+        private final int processIdentifier;
+
+        private final long timestamp;
+
+        private final String owner;
+
+        private final List<Range> ranges;
+
+        private final boolean overlapping;
+
+        Collision(final long machineIdentifier, final int processIdentifier, final long timestamp, final String owner, final List<Range> ranges,
+                final boolean overlapping) {
+            this.machineIdentifier = machineIdentifier;
+            this.processIdentifier = processIdentifier;
+            this.timestamp = timestamp;
+            this.owner = owner;
+            this.ranges = Collections.unmodifiableList(ranges);
+            this.overlapping = overlapping;
+        }
+
+        /**
+         * Gets the machine identifier of the shared identity.
+         *
+         * @return the machine identifier
+         */
+        public long getMachineIdentifier() {
+            return machineIdentifier;
+        }
+
+        /**
+         * Gets the process identifier of the shared identity.
+         *
+         * @return the process identifier
+         */
+        public int getProcessIdentifier() {
+            return processIdentifier;
+        }
+
+        /**
+         * Gets the second of the ids.
+         *
+         * @return the timestamp of second
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Gets the registered owner of the identity.
+         *
+         * @return the owner, null if not registered or no registry
+         */
+        public String getOwner() {
+            return owner;
+        }
+
+        /**
+         * Gets the counter ranges of the sources.
+         *
+         * @return the ranges, one per source
+         */
+        public List<Range> getRanges() {
+            return ranges;
+        }
+
+        /**
+         * Checks if the counter ranges of two sources overlap, so duplicate ids are likely.
+         *
+         * @return whether or not overlapping
+         */
+        public boolean isOverlapping() {
+            return overlapping;
+        }
+
+        @Override
+        public String toString() {
+            return "Collision [identity=" + UniqueIdRegistry.identity(machineIdentifier, processIdentifier) + ", owner=" + owner + ", timestamp="
+                    + timestamp + ", overlapping=" + overlapping + ", ranges=" + ranges + "]";
+        }
+    }
+
+    /**
+     * The counters of the ids of a source in a second: the arc from the first to the last counter clockwise.
+     */
+    public static final class Range {
+
+        private final String source;
+
+        private final int first;
+
+        private final int last;
+
+        private final long count;
+
+        Range(final String source, final int first, final int last, final long count) {
+            this.source = source;
+            this.first = first;
+            this.last = last;
+            this.count = count;
+        }
+
+        /**
+         * Gets the source name.
+         *
+         * @return the source
+         */
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * Gets the first counter.
+         *
+         * @return the first counter
+         */
+        public int getFirst() {
+            return first;
+        }
+
+        /**
+         * Gets the last counter, less then the first counter if the range wraps around.
+         *
+         * @return the last counter
+         */
+        public int getLast() {
+            return last;
+        }
+
+        /**
+         * Gets the number of ids.
+         *
+         * @return the id count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return source + "[" + first + ".." + last + "]x" + count;
+        }
+    }
+
+    /**
+     * The result of an audit.
+     */
+    public static final class Report {
+
+        private final long idCount;
+
+        private final long invalidLines;
+
+        private final long lateIds;
+
+        private final long collisionCount;
+
+        private final List<Collision> collisions;
+
+        Report(final long idCount, final long invalidLines, final long lateIds, final long collisionCount, final List<Collision> collisions) {
+            this.idCount = idCount;
+            this.invalidLines = invalidLines;
+            this.lateIds = lateIds;
+            this.collisionCount = collisionCount;
+            this.collisions = Collections.unmodifiableList(collisions);
+        }
+
+        /**
+         * Gets the number of ids read.
+         *
+         * @return the id count
+         */
+        public long getIdCount() {
+            return idCount;
+        }
+
+        /**
+         * Gets the number of non empty lines not beginning with an id.
+         *
+         * @return the number of invalid lines
+         */
+        public long getInvalidLines() {
+            return invalidLines;
+        }
+
+        /**
+         * Gets the number of ids behind the watermark, a collision of them might not be found.
+         *
+         * @return the number of late ids
+         */
+        public long getLateIds() {
+            return lateIds;
+        }
+
+        /**
+         * Gets the number of collisions, including the ones not reported.
+         *
+         * @return the collision count
+         */
+        public long getCollisionCount() {
+            return collisionCount;
+        }
+
+        /**
+         * Gets the reported collisions, in the order of second, machine and pid.
+         *
+         * @return the collisions
+         */
+        public List<Collision> getCollisions() {
+            return collisions;
+        }
+
+        /**
+         * Checks if no collision is found.
+         *
+         * @return whether or not clean
+         */
+        public boolean isClean() {
+            return collisionCount == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Report [idCount=" + idCount + ", invalidLines=" + invalidLines + ", lateIds=" + lateIds + ", collisionCount=" + collisionCount
+                    + ", collisions=" + collisions + "]";
+        }
+    }
+
+    /**
+     * The state of one audit.
+     */
+    private final class Audit {
+
+        private final List<String> names;
+
+        private final ConcurrentHashMap<Key, SourceRange[]> seconds = new ConcurrentHashMap<Key, SourceRange[]>();
+
+        // the latest timestamp of each source, Long.MAX_VALUE when finished
+        private final AtomicLongArray latest;
+
+        // the seconds before are checked and dropped, guarded by sweepLock
+        private volatile long watermark = Long.MIN_VALUE;
+
+        private final ReentrantLock sweepLock = new ReentrantLock();
+
+        private final LongAdder idCount = new LongAdder();
+
+        private final LongAdder invalidLines = new LongAdder();
+
+        private final LongAdder lateIds = new LongAdder();
+
+        private final LongAdder collisionCount = new LongAdder();
+
+        private final List<Collision> collisions = new ArrayList<Collision>();
+
+        private Map<String, String> owners;
+
+        Audit(final List<String> names) throws IOException {
+            this.names = names;
+            this.latest = new AtomicLongArray(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                latest.set(i, Long.MIN_VALUE);
+            }
+            this.owners = registry == null ? Collections.<String, String> emptyMap() : registry.getOwners();
+        }
+
+        void read(final int source, final BufferedReader reader) throws IOException {
+            long latestTimestamp = Long.MIN_VALUE;
+            long lines = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                UniqueId id = parse(line);
+                if (id == null) {
+                    continue;
+                }
+                idCount.increment();
+                long timestamp = id.getTimestamp();
+                if (timestamp < watermark) {
+                    lateIds.increment();
+                }
+                latestTimestamp = Math.max(latestTimestamp, timestamp);
+                final int counter = id.getCounter();
+                seconds.compute(new Key(timestamp, id.getMachineIdentifier(), id.getProcessIdentifier()), (key, ranges) -> {
+                    if (ranges == null) {
+                        ranges = new SourceRange[names.size()];
+                    }
+                    if (ranges[source] == null) {
+                        ranges[source] = new SourceRange(counter);
+                    } else {
+                        ranges[source].add(counter);
+                    }
+                    return ranges;
+                });
+                if (++lines % SWEEP_INTERVAL == 0) {
+                    latest.set(source, latestTimestamp);
+                    sweep();
+                }
+            }
+            latest.set(source, Long.MAX_VALUE);
+            sweep();
+        }
+
+        private UniqueId parse(final String line) {
+            int begin = 0;
+            while (begin < line.length() && Character.isWhitespace(line.charAt(begin))) {
+                begin++;
+            }
+            if (begin == line.length()) {
+                return null;
+            }
+            int end = begin;
+            while (end < line.length() && !Character.isWhitespace(line.charAt(end))) {
+                end++;
+            }
+            String token = line.substring(begin, end);
+            try {
+                if (token.length() == UniqueIdLayout.SECOND.getBase64Length()) {
+                    return UniqueId.fromBase64String(token);
+                } else if (token.length() == UniqueIdLayout.SECOND.getHexLength()) {
+                    return UniqueId.fromHexString(token);
+                }
+            } catch (IllegalArgumentException e) {
+                // counted as invalid below
+            }
+            invalidLines.increment();
+            return null;
+        }
+
+        /**
+         * Sweeps the seconds more then the lateness behind the slowest source.
+         */
+        private void sweep() {
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < latest.length(); i++) {
+                min = Math.min(min, latest.get(i));
+            }
+            if (min != Long.MIN_VALUE) {
+                sweep(min == Long.MAX_VALUE ? min : min - latenessSeconds);
+            }
+        }
+
+        /**
+         * Checks and drops the seconds before the watermark, skipped if another thread is sweeping.
+         */
+        private void sweep(final long newWatermark) {
+            if (newWatermark <= watermark || !sweepLock.tryLock()) {
+                return;
+            }
+            try {
+                watermark = newWatermark;
+                for (Key key : seconds.keySet()) {
+                    if (key.timestamp < newWatermark) {
+                        // no thread is updating the ranges once removed
+                        SourceRange[] ranges = seconds.remove(key);
+                        if (ranges != null) {
+                            check(key, ranges);
+                        }
+                    }
+                }
+            } finally {
+                sweepLock.unlock();
+            }
+        }
+
+        private void check(final Key key, final SourceRange[] ranges) {
+            List<Range> found = new ArrayList<Range>();
+            boolean overlapping = false;
+            for (int i = 0; i < ranges.length; i++) {
+                if (ranges[i] == null) {
+                    continue;
+                }
+                for (int j = 0; j < i; j++) {
+                    if (ranges[j] != null && ranges[i].overlaps(ranges[j])) {
+                        overlapping = true;
+                    }
+                }
+                found.add(new Range(names.get(i), ranges[i].first, (ranges[i].first + ranges[i].length) % COUNTER_MODULUS, ranges[i].count));
+            }
+            if (found.size() > 1) {
+                collisionCount.increment();
+                if (collisions.size() < maxCollisions) {
+                    collisions.add(new Collision(key.machineIdentifier, key.processIdentifier, key.timestamp,
+                            owners.get(UniqueIdRegistry.identity(key.machineIdentifier, key.processIdentifier)), found, overlapping));
+                }
+            }
+        }
+
+        /**
+         * Checks all the seconds left, when all the sources are read.
+         */
+        void finish() {
+            watermark = Long.MIN_VALUE;
+            sweep(Long.MAX_VALUE);
+        }
+
+        Report report() {
+            List<Collision> sorted = new ArrayList<Collision>(collisions);
+            sorted.sort(Comparator.comparingLong(Collision::getTimestamp).thenComparingLong(Collision::getMachineIdentifier)
+                    .thenComparingInt(Collision::getProcessIdentifier));
+            return new Report(idCount.sum(), invalidLines.sum(), lateIds.sum(), collisionCount.sum(), sorted);
+        }
+    }
+
+    /**
+     * The machine, pid and second.
+     */
+    private static final class Key {
+
+        private final long timestamp;
+
+        private final long machineIdentifier;
+
+        private final int processIdentifier;
+
+        Key(final long timestamp, final long machineIdentifier, final int processIdentifier) {
+            this.timestamp = timestamp;
+            this.machineIdentifier = machineIdentifier;
+            this.processIdentifier = processIdentifier;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return timestamp == other.timestamp && machineIdentifier == other.machineIdentifier && processIdentifier == other.processIdentifier;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (timestamp ^ (timestamp >>> 32));
+            result = 31 * result + (int) (machineIdentifier ^ (machineIdentifier >>> 32));
+            result = 31 * result + processIdentifier;
+            return result;
+        }
+    }
+
+    /**
+     * The smallest arc of the counter circle covering the counters of a source, updated under the lock of its map entry.
+     */
+    private static final class SourceRange {
+
+        private int first;
+
+        // the last counter is first + length modulo 2^24
+        private int length;
+
+        private long count;
+
+        SourceRange(final int counter) {
+            this.first = counter;
+            this.count = 1;
+        }
+
+        void add(final int counter) {
+            count++;
+            int after = (counter - first) & (COUNTER_MODULUS - 1);
+            if (after <= length) {
+                return;
+            }
+            // extend the arc clockwise to the counter, or counterclockwise, whichever is shorter
+            int before = (first - counter) & (COUNTER_MODULUS - 1);
+            if (after - length <= before) {
+                length = after;
+            } else {
+                first = counter;
+                length += before;
+            }
+        }
+
+        boolean overlaps(final SourceRange other) {
+            return ((other.first - first) & (COUNTER_MODULUS - 1)) <= length || ((first - other.first) & (COUNTER_MODULUS - 1)) <= other.length;
+        }
+    }
+}
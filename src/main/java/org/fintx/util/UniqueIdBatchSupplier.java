@@ -0,0 +1,143 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fintx.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * A non-blocking supplier of {@code UniqueId} batches.
+ * </p>
+ *
+ * <p>
+ * A batch is generated with one timestamp and one counter reservation. When the counters of the current second are used up (about 16777216 per second per
+ * JVM), the rest of the batch is scheduled to the next second instead of blocking a thread. The rest is not generated if the future is cancelled
+ * meanwhile.
+ * </p>
+ *
+ */
+public final class UniqueIdBatchSupplier {
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Constructs a new instance using a shared daemon scheduler thread.
+     */
+    public UniqueIdBatchSupplier() {
+        this(defaultScheduler());
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param scheduler the scheduler to generate the rest of a batch in the next second
+     * @throws IllegalArgumentException if scheduler is null
+     */
+    public UniqueIdBatchSupplier(final ScheduledExecutorService scheduler) {
+        if (scheduler == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Gets a batch of new ids.
+     *
+     * @param count the number of ids
+     * @return the future completed with the ids in generating order
+     * @throws IllegalArgumentException if count is negative
+     */
+    public CompletableFuture<UniqueId[]> get(final int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("The count must not be negative.");
+        }
+        CompletableFuture<UniqueId[]> future = new CompletableFuture<UniqueId[]>();
+        fill(new UniqueId[count], 0, future);
+        return future;
+    }
+
+    private void fill(final UniqueId[] ids, final int offset, final CompletableFuture<UniqueId[]> future) {
+        // cancelled (or completed by the caller) while waiting for the next second, the rest is not wanted
+        if (future.isDone()) {
+            return;
+        }
+        try {
+            int filled = offset;
+            int size;
+            do {
+                size = UniqueId.nextBatch(ids, filled, ids.length - filled);
+                filled += size;
+            } while (size > 0 && filled < ids.length);
+            if (filled == ids.length) {
+                future.complete(ids);
+                return;
+            }
+            if (future.isDone()) {
+                return;
+            }
+            final int rest = filled;
+            scheduler.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    fill(ids, rest, future);
+                }
+
+            }, delayToNextSecond(), TimeUnit.MILLISECONDS);
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+
+    /**
+     * Gets the shared daemon scheduler.
+     *
+     * @return the scheduler
+     */
+    static ScheduledExecutorService defaultScheduler() {
+        return DefaultScheduler.INSTANCE;
+    }
+
+    /**
+     * Gets the milliseconds to the next second.
+     *
+     * @return the delay in milliseconds
+     */
+    static long delayToNextSecond() {
+        return 1000L - System.currentTimeMillis() % 1000L;
+    }
+
+    /**
+     * Lazy holder of the shared scheduler.
+     */
+    private static final class DefaultScheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(r, "UniqueIdBatchSupplier-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        });
+    }
+}
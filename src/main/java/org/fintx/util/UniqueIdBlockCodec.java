@@ -0,0 +1,608 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fintx.util;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A block codec compressing sequences of {@code UniqueId}s, best for the sorted ones.
+ * </p>
+ *
+ * <p>
+ * A block is an int of the payload length, an int of the number of ids and the payload. The payload begins with the 15 bytes of the first id, each
+ * following id is encoded against the previous one:
+ * </p>
+ * <ul>
+ * <li>a varint of the time delta (modulo 2^32) shifted left by one, the low bit set if the machine or the pid changed</li>
+ * <li>the 6 bytes of machine and 2 bytes of pid, only if they changed</li>
+ * <li>a zigzag varint of the counter delta (modulo 2^24, signed)</li>
+ * </ul>
+ * <p>
+ * So the consecutive ids of one process take 2 bytes each instead of 15. Blocks are independent of each other, so they could be decoded by block with
+ * {@link Index}, or one after another with {@link Reader}. The ints are big-endian.
+ * </p>
+ *
+ */
+public final class UniqueIdBlockCodec {
+
+    /**
+     * The default max number of ids in a block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    private static final int HEADER_LENGTH = 8;
+
+    private UniqueIdBlockCodec() {
+    }
+
+    /**
+     * Encodes ids into one block.
+     *
+     * @param ids the UniqueIds
+     * @param offset the index of the first id
+     * @param length the number of ids, at least 1
+     * @return the block
+     * @throws IllegalArgumentException if ids is null or contains null, or the range is not valid
+     */
+    public static byte[] encodeBlock(final UniqueId[] ids, final int offset, final int length) {
+        if (ids == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        if (length <= 0 || offset < 0 || offset > ids.length - length) {
+            throw new IllegalArgumentException("Invalid range of ids.");
+        }
+        BlockEncoder encoder = new BlockEncoder(15 + length * 2);
+        for (int i = offset; i < offset + length; i++) {
+            encoder.add(ids[i]);
+        }
+        byte[] block = new byte[HEADER_LENGTH + encoder.length];
+        ByteBuffer.wrap(block).putInt(encoder.length).putInt(encoder.count).put(encoder.buffer, 0, encoder.length);
+        return block;
+    }
+
+    /**
+     * Decodes one block.
+     *
+     * @param block the block
+     * @return the UniqueIds
+     * @throws IllegalArgumentException if block is null or not a valid block
+     */
+    public static UniqueId[] decodeBlock(final byte[] block) {
+        if (block == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        Index index = new Index(ByteBuffer.wrap(block));
+        if (index.getBlockCount() != 1) {
+            throw new IllegalArgumentException("Malformed block: one block is expected.");
+        }
+        return index.getBlock(0);
+    }
+
+    /**
+     * Writes ids as blocks into an output stream. Not thread safe.
+     */
+    public static final class Writer implements Closeable, Flushable {
+
+        private final DataOutputStream out;
+
+        private final int blockSize;
+
+        private final BlockEncoder encoder;
+
+        /**
+         * Constructs a new writer with the default block size.
+         *
+         * @param out the output stream
+         */
+        public Writer(final OutputStream out) {
+            this(out, DEFAULT_BLOCK_SIZE);
+        }
+
+        /**
+         * Constructs a new writer.
+         *
+         * @param out the output stream
+         * @param blockSize the max number of ids in a block
+         * @throws IllegalArgumentException if out is null or blockSize is not positive
+         */
+        public Writer(final OutputStream out, final int blockSize) {
+            if (out == null) {
+                throw new IllegalArgumentException("Argument should not be null!");
+            }
+            if (blockSize <= 0) {
+                throw new IllegalArgumentException("The block size must be positive.");
+            }
+            this.out = new DataOutputStream(out);
+            this.blockSize = blockSize;
+            this.encoder = new BlockEncoder(Math.min(blockSize, DEFAULT_BLOCK_SIZE) * 2 + 15);
+        }
+
+        /**
+         * Writes an id, a block is written when it is full.
+         *
+         * @param id the UniqueId
+         * @throws IOException if an I/O error occurs
+         */
+        public void write(final UniqueId id) throws IOException {
+            if (id == null) {
+                throw new IllegalArgumentException("Argument should not be null!");
+            }
+            encoder.add(id);
+            if (encoder.count == blockSize) {
+                writeBlock();
+            }
+        }
+
+        /**
+         * Writes the pending ids as a (smaller) block and flushes the output stream.
+         *
+         * @throws IOException if an I/O error occurs
+         */
+        @Override
+        public void flush() throws IOException {
+            writeBlock();
+            out.flush();
+        }
+
+        /**
+         * Writes the pending ids and closes the output stream.
+         *
+         * @throws IOException if an I/O error occurs
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                writeBlock();
+            } finally {
+                out.close();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (encoder.count > 0) {
+                out.writeInt(encoder.length);
+                out.writeInt(encoder.count);
+                out.write(encoder.buffer, 0, encoder.length);
+                encoder.reset();
+            }
+        }
+    }
+
+    /**
+     * Reads ids from blocks of an input stream one after another. Not thread safe.
+     */
+    public static final class Reader implements Closeable {
+
+        private final DataInputStream in;
+
+        private ByteBuffer payload = ByteBuffer.allocate(0);
+
+        private final BlockDecoder decoder = new BlockDecoder();
+
+        /**
+         * Constructs a new reader.
+         *
+         * @param in the input stream
+         * @throws IllegalArgumentException if in is null
+         */
+        public Reader(final InputStream in) {
+            if (in == null) {
+                throw new IllegalArgumentException("Argument should not be null!");
+            }
+            this.in = new DataInputStream(in);
+        }
+
+        /**
+         * Reads the next id.
+         *
+         * @return the UniqueId, null at the end of the stream
+         * @throws IOException if an I/O error occurs, or the stream ends in a block
+         * @throws IllegalArgumentException if a block is not valid
+         */
+        public UniqueId read() throws IOException {
+            if (decoder.remaining == 0 && !nextBlock()) {
+                return null;
+            }
+            return decoder.next();
+        }
+
+        /**
+         * Reads the ids left in the current block, or the ids of the next block.
+         *
+         * @return the UniqueIds, null at the end of the stream
+         * @throws IOException if an I/O error occurs, or the stream ends in a block
+         * @throws IllegalArgumentException if a block is not valid
+         */
+        public UniqueId[] readBlock() throws IOException {
+            if (decoder.remaining == 0 && !nextBlock()) {
+                return null;
+            }
+            UniqueId[] ids = new UniqueId[decoder.remaining];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = decoder.next();
+            }
+            return ids;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private boolean nextBlock() throws IOException {
+            int first = in.read();
+            if (first < 0) {
+                return false;
+            }
+            int length = first << 24 | in.readUnsignedByte() << 16 | in.readUnsignedShort();
+            int count = in.readInt();
+            checkHeader(length, count);
+            if (payload.capacity() < length) {
+                payload = ByteBuffer.allocate(length);
+            }
+            in.readFully(payload.array(), 0, length);
+            decoder.reset(payload, 0, length, count);
+            return true;
+        }
+    }
+
+    /**
+     * Random access to the blocks in a buffer. The blocks are located when constructed, and decoded on demand. Thread safe.
+     */
+    public static final class Index {
+
+        private final ByteBuffer buffer;
+
+        // the payload offset of each block
+        private final int[] offsets;
+
+        // the index of the first id of each block, and the total number of ids at the end
+        private final long[] firstIndexes;
+
+        private final UniqueId[] firstIds;
+
+        /**
+         * Locates the blocks from the position to the limit of a buffer.
+         *
+         * @param buffer the buffer of blocks, its position and limit are not changed
+         * @throws IllegalArgumentException if buffer is null or the blocks are not valid
+         */
+        public Index(final ByteBuffer buffer) {
+            if (buffer == null) {
+                throw new IllegalArgumentException("Argument should not be null!");
+            }
+            this.buffer = buffer.slice();
+            int[] offsets = new int[16];
+            long[] firstIndexes = new long[17];
+            int blocks = 0;
+            for (int pos = 0; pos < this.buffer.limit(); blocks++) {
+                if (this.buffer.limit() - pos < HEADER_LENGTH) {
+                    throw new IllegalArgumentException("Malformed block: truncated header at " + pos + ".");
+                }
+                int length = this.buffer.getInt(pos);
+                int count = this.buffer.getInt(pos + 4);
+                checkHeader(length, count);
+                pos += HEADER_LENGTH;
+                if (this.buffer.limit() - pos < length) {
+                    throw new IllegalArgumentException("Malformed block: truncated payload at " + pos + ".");
+                }
+                if (blocks == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, blocks * 2);
+                    firstIndexes = Arrays.copyOf(firstIndexes, blocks * 2 + 1);
+                }
+                offsets[blocks] = pos;
+                firstIndexes[blocks + 1] = firstIndexes[blocks] + count;
+                pos += length;
+            }
+            this.offsets = Arrays.copyOf(offsets, blocks);
+            this.firstIndexes = Arrays.copyOf(firstIndexes, blocks + 1);
+            this.firstIds = new UniqueId[blocks];
+            for (int i = 0; i < blocks; i++) {
+                firstIds[i] = UniqueId.fromByteArray(bytes(offsets[i], 15));
+            }
+        }
+
+        /**
+         * Gets the number of blocks.
+         *
+         * @return the block count
+         */
+        public int getBlockCount() {
+            return offsets.length;
+        }
+
+        /**
+         * Gets the number of ids in all the blocks.
+         *
+         * @return the id count
+         */
+        public long getIdCount() {
+            return firstIndexes[offsets.length];
+        }
+
+        /**
+         * Gets the first id of a block, without decoding the block.
+         *
+         * @param block the index of the block
+         * @return the first UniqueId of the block
+         */
+        public UniqueId getFirstId(final int block) {
+            return firstIds[checkBlock(block)];
+        }
+
+        /**
+         * Decodes a block.
+         *
+         * @param block the index of the block
+         * @return the UniqueIds of the block
+         * @throws IllegalArgumentException if the block is not valid
+         */
+        public UniqueId[] getBlock(final int block) {
+            BlockDecoder decoder = decoder(checkBlock(block));
+            UniqueId[] ids = new UniqueId[decoder.remaining];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = decoder.next();
+            }
+            return ids;
+        }
+
+        /**
+         * Gets an id by its index in all the blocks, only its block is decoded (up to the id).
+         *
+         * @param index the index of the id
+         * @return the UniqueId
+         * @throws IndexOutOfBoundsException if index is out of range
+         */
+        public UniqueId get(final long index) {
+            if (index < 0 || index >= getIdCount()) {
+                throw new IndexOutOfBoundsException("Index:" + index + ", Size:" + getIdCount());
+            }
+            // blocks are never empty, so the first indexes are strictly increasing
+            int block = Arrays.binarySearch(firstIndexes, 0, offsets.length, index);
+            if (block < 0) {
+                block = -block - 2;
+            }
+            BlockDecoder decoder = decoder(block);
+            UniqueId id = decoder.next();
+            for (long i = firstIndexes[block]; i < index; i++) {
+                id = decoder.next();
+            }
+            return id;
+        }
+
+        /**
+         * Finds the block which may contain an id, if the ids are sorted.
+         *
+         * @param id the UniqueId
+         * @return the index of the last block whose first id is not greater then the id, -1 if the id is less then all
+         */
+        public int findBlock(final UniqueId id) {
+            if (id == null) {
+                throw new IllegalArgumentException("Argument should not be null!");
+            }
+            int block = Arrays.binarySearch(firstIds, id);
+            return block >= 0 ? block : -block - 2;
+        }
+
+        private int checkBlock(final int block) {
+            if (block < 0 || block >= offsets.length) {
+                throw new IndexOutOfBoundsException("Block:" + block + ", Count:" + offsets.length);
+            }
+            return block;
+        }
+
+        private BlockDecoder decoder(final int block) {
+            BlockDecoder decoder = new BlockDecoder();
+            decoder.reset(buffer, offsets[block], buffer.getInt(offsets[block] - HEADER_LENGTH), buffer.getInt(offsets[block] - 4));
+            return decoder;
+        }
+
+        private byte[] bytes(final int offset, final int length) {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(offset + i);
+            }
+            return bytes;
+        }
+    }
+
+    private static void checkHeader(final int length, final int count) {
+        // the first id takes 15 bytes, each of the others takes 2 bytes at least
+        if (count <= 0 || length < 15 || (length - 15) / 2 < count - 1) {
+            throw new IllegalArgumentException("Malformed block: length " + length + " and count " + count + ".");
+        }
+    }
+
+    /**
+     * Encodes ids into the payload of a block.
+     */
+    private static final class BlockEncoder {
+
+        private byte[] buffer;
+
+        private int length;
+
+        private int count;
+
+        private int timestamp;
+
+        private long machineIdentifier;
+
+        private int processIdentifier;
+
+        private int counter;
+
+        BlockEncoder(final int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void add(final UniqueId id) {
+            if (id == null) {
+                throw new IllegalArgumentException("Argument should not be null!");
+            }
+            // a time delta varint of 5 bytes, machine and pid of 8 bytes, a counter delta varint of 4 bytes at most
+            ensureCapacity(17);
+            int ts = (int) id.getTimestamp();
+            long machine = id.getMachineIdentifier();
+            int pid = id.getProcessIdentifier();
+            int ctr = id.getCounter();
+            if (count == 0) {
+                putLong(ts, 4);
+                putLong(machine, 6);
+                putLong(pid, 2);
+                putLong(ctr, 3);
+            } else {
+                boolean prefixChanged = machine != machineIdentifier || pid != processIdentifier;
+                putVarint(((ts - timestamp) & 0xffffffffL) << 1 | (prefixChanged ? 1 : 0));
+                if (prefixChanged) {
+                    putLong(machine, 6);
+                    putLong(pid, 2);
+                }
+                // the delta modulo 2^24 as a signed number
+                int delta = (ctr - counter) << 8 >> 8;
+                putVarint((delta << 1 ^ delta >> 31) & 0xffffffffL);
+            }
+            timestamp = ts;
+            machineIdentifier = machine;
+            processIdentifier = pid;
+            counter = ctr;
+            count++;
+        }
+
+        void reset() {
+            length = 0;
+            count = 0;
+        }
+
+        private void ensureCapacity(final int extra) {
+            if (buffer.length - length < extra) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+            }
+        }
+
+        private void putLong(final long num, final int bytes) {
+            for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+                buffer[length++] = (byte) (num >>> shift);
+            }
+        }
+
+        private void putVarint(long num) {
+            while ((num & ~0x7fL) != 0) {
+                buffer[length++] = (byte) (num & 0x7f | 0x80);
+                num >>>= 7;
+            }
+            buffer[length++] = (byte) num;
+        }
+    }
+
+    /**
+     * Decodes ids from the payload of a block, by absolute positions of a buffer.
+     */
+    private static final class BlockDecoder {
+
+        private ByteBuffer buffer;
+
+        private int position;
+
+        private int end;
+
+        private int remaining;
+
+        private boolean first;
+
+        private int timestamp;
+
+        private long machineIdentifier;
+
+        private short processIdentifier;
+
+        private int counter;
+
+        void reset(final ByteBuffer buffer, final int offset, final int length, final int count) {
+            this.buffer = buffer;
+            this.position = offset;
+            this.end = offset + length;
+            this.remaining = count;
+            this.first = true;
+        }
+
+        UniqueId next() {
+            if (first) {
+                timestamp = (int) getLong(4);
+                machineIdentifier = getLong(6);
+                processIdentifier = (short) getLong(2);
+                counter = (int) getLong(3);
+                first = false;
+            } else {
+                long head = getVarint();
+                if (head >>> 33 != 0) {
+                    throw new IllegalArgumentException("Malformed block: time delta out of range at " + position + ".");
+                }
+                timestamp += (int) (head >>> 1);
+                if ((head & 1) != 0) {
+                    machineIdentifier = getLong(6);
+                    processIdentifier = (short) getLong(2);
+                }
+                long zigzag = getVarint();
+                if (zigzag >>> 24 != 0) {
+                    throw new IllegalArgumentException("Malformed block: counter delta out of range at " + position + ".");
+                }
+                counter = counter + ((int) (zigzag >>> 1) ^ -(int) (zigzag & 1)) & 0x00ffffff;
+            }
+            if (--remaining == 0 && position != end) {
+                throw new IllegalArgumentException("Malformed block: " + (end - position) + " bytes left after the last id.");
+            }
+            return UniqueId.fromFields(timestamp, machineIdentifier, processIdentifier, counter);
+        }
+
+        private int get() {
+            if (position >= end) {
+                throw new IllegalArgumentException("Malformed block: unexpected end of payload.");
+            }
+            return buffer.get(position++) & 0xff;
+        }
+
+        private long getLong(final int bytes) {
+            long num = 0;
+            for (int i = 0; i < bytes; i++) {
+                num = num << 8 | get();
+            }
+            return num;
+        }
+
+        private long getVarint() {
+            long num = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = get();
+                num |= (long) (b & 0x7f) << shift;
+                if (b < 0x80) {
+                    return num;
+                }
+            }
+            throw new IllegalArgumentException("Malformed block: varint too long at " + position + ".");
+        }
+    }
+}
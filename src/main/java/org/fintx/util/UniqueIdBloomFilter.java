@@ -0,0 +1,411 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fintx.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * A blocked Bloom filter of {@code UniqueId}s, to tell the ids definitely not seen before checking a database.
+ * </p>
+ *
+ * <p>
+ * All the bits of an id are in one block of 512 bits (a 64 bytes cache line), so a lookup touches one cache line. The id is hashed from its two longs
+ * of the UUID form, without encoding it. Inserts are lock free (compare and set of the words), lookups are wait free. Filters of the same size could be
+ * merged, e.g. the filters of multiple nodes.
+ * </p>
+ *
+ * <p>
+ * The serialized form is an int magic, an int of the number of hash functions, an int of the number of blocks, a long of the capacity, a double of the
+ * configured false positive probability and the words of the blocks, all big-endian. It could be written to a file with {@link #writeTo(DataOutput)},
+ * or to a (memory mapped) buffer with {@link #writeTo(ByteBuffer)}.
+ * </p>
+ *
+ */
+public final class UniqueIdBloomFilter {
+
+    private static final int MAGIC = 0x55494246;
+
+    private static final int BLOCK_BITS = 512;
+
+    private static final int BLOCK_WORDS = BLOCK_BITS / 64;
+
+    // the bit positions (9 bits each) taken from one 64 bits hash
+    private static final int BITS_PER_HASH = 7;
+
+    private static final int HEADER_LENGTH = 4 + 4 + 4 + 8 + 8;
+
+    private final long capacity;
+
+    private final double fpp;
+
+    private final int hashFunctions;
+
+    private final int blocks;
+
+    private final AtomicLongArray words;
+
+    private final LongAdder bitCount = new LongAdder();
+
+    /**
+     * Constructs a new empty filter.
+     *
+     * @param capacity the expected number of ids
+     * @param fpp the false positive probability wanted at the capacity, between 0 and 1 exclusive
+     * @throws IllegalArgumentException if capacity is not positive, fpp is out of range, or the filter needs more then 2^31 words
+     */
+    public UniqueIdBloomFilter(final long capacity, final double fpp) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive.");
+        }
+        if (!(fpp > 0 && fpp < 1)) {
+            throw new IllegalArgumentException("The false positive probability must be between 0 and 1.");
+        }
+        // the optimal bits of a standard Bloom filter, plus some for the uneven load of blocks
+        double bits = -capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)) * 1.1;
+        long blocks = (long) Math.ceil(bits / BLOCK_BITS);
+        if (blocks * BLOCK_WORDS > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The filter is too large.");
+        }
+        this.capacity = capacity;
+        this.fpp = fpp;
+        this.blocks = (int) blocks;
+        this.hashFunctions = Math.max(1, Math.min(16, (int) Math.round(blocks * BLOCK_BITS / (double) capacity * Math.log(2))));
+        this.words = new AtomicLongArray(this.blocks * BLOCK_WORDS);
+    }
+
+    private UniqueIdBloomFilter(final long capacity, final double fpp, final int hashFunctions, final int blocks) {
+        this.capacity = capacity;
+        this.fpp = fpp;
+        this.hashFunctions = hashFunctions;
+        this.blocks = blocks;
+        this.words = new AtomicLongArray(blocks * BLOCK_WORDS);
+    }
+
+    /**
+     * Puts an id into the filter.
+     *
+     * @param id the UniqueId
+     * @return true if the filter changed, false if the id might have been put before
+     * @throws IllegalArgumentException if id is null
+     */
+    public boolean put(final UniqueId id) {
+        final long hash = hash(id);
+        final int base = block(hash) * BLOCK_WORDS;
+        long bitHash = hash;
+        int changedBits = 0;
+        for (int i = 0; i < hashFunctions; i++) {
+            if (i % BITS_PER_HASH == 0) {
+                bitHash = fmix64(bitHash + i);
+            }
+            int bit = (int) (bitHash >>> i % BITS_PER_HASH * 9) & (BLOCK_BITS - 1);
+            int index = base + (bit >>> 6);
+            long mask = 1L << bit;
+            for (;;) {
+                long word = words.get(index);
+                if ((word & mask) != 0) {
+                    break;
+                }
+                if (words.compareAndSet(index, word, word | mask)) {
+                    changedBits++;
+                    break;
+                }
+            }
+        }
+        if (changedBits > 0) {
+            bitCount.add(changedBits);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if an id might have been put into the filter.
+     *
+     * @param id the UniqueId
+     * @return false if the id was definitely not put, true if it might have been put
+     * @throws IllegalArgumentException if id is null
+     */
+    public boolean mightContain(final UniqueId id) {
+        final long hash = hash(id);
+        final int base = block(hash) * BLOCK_WORDS;
+        long bitHash = hash;
+        for (int i = 0; i < hashFunctions; i++) {
+            if (i % BITS_PER_HASH == 0) {
+                bitHash = fmix64(bitHash + i);
+            }
+            int bit = (int) (bitHash >>> i % BITS_PER_HASH * 9) & (BLOCK_BITS - 1);
+            if ((words.get(base + (bit >>> 6)) & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Merges the ids of another filter into this filter.
+     *
+     * @param other the filter of the same capacity and false positive probability
+     * @throws IllegalArgumentException if other is null or not of the same size
+     */
+    public void merge(final UniqueIdBloomFilter other) {
+        if (other == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        if (other.blocks != blocks || other.hashFunctions != hashFunctions) {
+            throw new IllegalArgumentException("The filters are not of the same size.");
+        }
+        for (int i = 0; i < words.length(); i++) {
+            long bits = other.words.get(i);
+            if (bits != 0) {
+                long old = words.getAndAccumulate(i, bits, (a, b) -> a | b);
+                bitCount.add(Long.bitCount(bits & ~old));
+            }
+        }
+    }
+
+    /**
+     * Gets the expected number of ids.
+     *
+     * @return the capacity
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the false positive probability wanted at the capacity.
+     *
+     * @return the configured false positive probability
+     */
+    public double getConfiguredFpp() {
+        return fpp;
+    }
+
+    /**
+     * Gets the number of hash functions (bits set per id).
+     *
+     * @return the number of hash functions
+     */
+    public int getHashFunctions() {
+        return hashFunctions;
+    }
+
+    /**
+     * Gets the number of bits.
+     *
+     * @return the bit size
+     */
+    public long getBitSize() {
+        return (long) blocks * BLOCK_BITS;
+    }
+
+    /**
+     * Gets the number of bits set.
+     *
+     * @return the bit count
+     */
+    public long getBitCount() {
+        return bitCount.sum();
+    }
+
+    /**
+     * Gets the false positive probability of this filter when the capacity of ids are put. It takes the uneven load of the blocks into account, with
+     * the extra bits allocated it is a little less then {@link #getConfiguredFpp()}.
+     *
+     * @return the expected false positive probability at the capacity
+     */
+    public double expectedFpp() {
+        return expectedFpp(capacity);
+    }
+
+    /**
+     * Gets the false positive probability estimated from the number of ids put so far, see {@link #approximateElementCount()}.
+     *
+     * @return the current false positive probability
+     */
+    public double currentFpp() {
+        return expectedFpp(approximateElementCount());
+    }
+
+    /**
+     * Gets the number of distinct ids put so far, estimated from the number of bits set.
+     *
+     * @return the approximate number of ids
+     */
+    public long approximateElementCount() {
+        double bits = getBitSize();
+        double fraction = Math.min(getBitCount(), bits - 1) / bits;
+        return Math.round(-bits / hashFunctions * Math.log1p(-fraction));
+    }
+
+    /**
+     * Gets the number of bytes of the serialized form.
+     *
+     * @return the serialized size
+     */
+    public int getSerializedSize() {
+        return HEADER_LENGTH + words.length() * 8;
+    }
+
+    /**
+     * Writes the filter. Concurrent puts might or might not be written.
+     *
+     * @param out the output
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(hashFunctions);
+        out.writeInt(blocks);
+        out.writeLong(capacity);
+        out.writeDouble(fpp);
+        for (int i = 0; i < words.length(); i++) {
+            out.writeLong(words.get(i));
+        }
+    }
+
+    /**
+     * Writes the filter into a buffer from its position, e.g. a memory mapped file. Concurrent puts might or might not be written.
+     *
+     * @param buffer the buffer with {@link #getSerializedSize()} bytes remaining at least, its position is advanced
+     * @throws BufferOverflowException if there is not enough bytes remaining
+     */
+    public void writeTo(final ByteBuffer buffer) {
+        if (buffer.remaining() < getSerializedSize()) {
+            throw new BufferOverflowException();
+        }
+        ByteBuffer out = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        out.putInt(MAGIC).putInt(hashFunctions).putInt(blocks).putLong(capacity).putDouble(fpp);
+        for (int i = 0; i < words.length(); i++) {
+            out.putLong(words.get(i));
+        }
+        // through Buffer, as ByteBuffer.position(int) of Java 9 or later is not on Java 8
+        ((Buffer) buffer).position(out.position());
+    }
+
+    /**
+     * Reads a filter written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in the input
+     * @return the new filter
+     * @throws IOException if an I/O error occurs or it is not a filter
+     */
+    public static UniqueIdBloomFilter readFrom(final DataInput in) throws IOException {
+        UniqueIdBloomFilter filter = readHeader(in.readInt(), in.readInt(), in.readInt(), in.readLong(), in.readDouble());
+        for (int i = 0; i < filter.words.length(); i++) {
+            filter.setWord(i, in.readLong());
+        }
+        return filter;
+    }
+
+    /**
+     * Reads a filter written by {@link #writeTo(ByteBuffer)} from the position of a buffer, e.g. a memory mapped file.
+     *
+     * @param buffer the buffer, its position is advanced
+     * @return the new filter
+     * @throws IOException if it is not a filter
+     * @throws BufferUnderflowException if the buffer ends in the filter
+     */
+    public static UniqueIdBloomFilter readFrom(final ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        UniqueIdBloomFilter filter = readHeader(in.getInt(), in.getInt(), in.getInt(), in.getLong(), in.getDouble());
+        for (int i = 0; i < filter.words.length(); i++) {
+            filter.setWord(i, in.getLong());
+        }
+        ((Buffer) buffer).position(in.position());
+        return filter;
+    }
+
+    @Override
+    public String toString() {
+        return "UniqueIdBloomFilter [capacity=" + capacity + ", configuredFpp=" + fpp + ", bitSize=" + getBitSize() + ", hashFunctions="
+                + hashFunctions + ", approximateElementCount=" + approximateElementCount() + ", currentFpp=" + currentFpp() + "]";
+    }
+
+    private static UniqueIdBloomFilter readHeader(final int magic, final int hashFunctions, final int blocks, final long capacity, final double fpp)
+            throws IOException {
+        if (magic != MAGIC) {
+            throw new IOException("Not a UniqueIdBloomFilter.");
+        }
+        if (hashFunctions < 1 || hashFunctions > 16 || blocks < 1 || blocks > Integer.MAX_VALUE / BLOCK_WORDS || capacity <= 0
+                || !(fpp > 0 && fpp < 1)) {
+            throw new IOException("Invalid UniqueIdBloomFilter header.");
+        }
+        return new UniqueIdBloomFilter(capacity, fpp, hashFunctions, blocks);
+    }
+
+    private void setWord(final int index, final long word) {
+        words.set(index, word);
+        bitCount.add(Long.bitCount(word));
+    }
+
+    /**
+     * Gets the false positive probability of a blocked filter with n ids: the probability of each block load (Poisson distributed) times the false
+     * positive probability of the block with that load.
+     */
+    private double expectedFpp(final long n) {
+        double lambda = (double) n / blocks;
+        if (lambda > BLOCK_BITS) {
+            // far over the capacity, the Poisson probabilities underflow and the load is even enough
+            return Math.pow(1 - Math.exp(-hashFunctions * lambda / BLOCK_BITS), hashFunctions);
+        }
+        double bitUnset = 1 - 1.0 / BLOCK_BITS;
+        double result = 0;
+        double probability = Math.exp(-lambda);
+        int max = (int) (lambda + 10 * Math.sqrt(lambda) + 20);
+        for (int i = 0; i <= max; i++) {
+            if (i > 0) {
+                probability *= lambda / i;
+            }
+            result += probability * Math.pow(1 - Math.pow(bitUnset, (double) hashFunctions * i), hashFunctions);
+        }
+        return result;
+    }
+
+    private int block(final long hash) {
+        return (int) (((hash >>> 32) * blocks) >>> 32);
+    }
+
+    private static long hash(final UniqueId id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        return fmix64(id.mostSignificantBits() ^ fmix64(id.leastSignificantBits()));
+    }
+
+    /**
+     * The finalization mix of MurmurHash3.
+     */
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fintx.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * A bounded concurrent cache of decoded {@code UniqueId}s keyed by their string representation, for the ids decoded again and again.
+ * </p>
+ *
+ * <p>
+ * A hit is a lock free hash lookup returning the canonical instance (the one inserted first, whose strings are cached too). Misses decode outside
+ * the lock and insert under it, evicting with the CLOCK (second chance) algorithm: a hit marks the entry referenced, and the clock hand evicts the
+ * first entry not referenced since it passed last time. The clock and the map grow with the entries, up to the maximum size. The base64 and hexadecimal strings of the same id share one canonical instance while both are cached.
+ * </p>
+ *
+ */
+public final class UniqueIdCache {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int maximumSize;
+
+    private final ConcurrentHashMap<String, Node> map;
+
+    // the clock, guarded by lock, doubled when full until the maximum size
+    private Node[] clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private int size;
+
+    private int hand;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs a new cache.
+     *
+     * @param maximumSize the max number of cached strings
+     * @throws IllegalArgumentException if maximumSize is not positive or more than 1073741824
+     */
+    public UniqueIdCache(final int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("The maximum size must be positive.");
+        }
+        if (maximumSize > (1 << 30)) {
+            throw new IllegalArgumentException("The maximum size must not be more than 1073741824.");
+        }
+        this.maximumSize = maximumSize;
+        // sized for the first entries only, a cache that never fills does not allocate for the maximum size
+        this.map = new ConcurrentHashMap<String, Node>(Math.min(maximumSize, INITIAL_CAPACITY) * 4 / 3 + 1);
+        this.clock = new Node[Math.min(maximumSize, INITIAL_CAPACITY)];
+    }
+
+    /**
+     * Gets the canonical instance of a base64 string representation.
+     *
+     * @param base64String the string to convert
+     * @return the cached or new UniqueId instance
+     * @see UniqueId#fromBase64String(String)
+     */
+    public UniqueId fromBase64String(final String base64String) {
+        UniqueId uniqueId = lookup(base64String);
+        if (uniqueId == null) {
+            uniqueId = insert(base64String, UniqueId.fromBase64String(base64String));
+        }
+        return uniqueId;
+    }
+
+    /**
+     * Gets the canonical instance of a hexadecimal string representation.
+     *
+     * @param hexString the string to convert
+     * @return the cached or new UniqueId instance
+     * @see UniqueId#fromHexString(String)
+     */
+    public UniqueId fromHexString(final String hexString) {
+        UniqueId uniqueId = lookup(hexString);
+        if (uniqueId == null) {
+            uniqueId = UniqueId.fromHexString(hexString);
+            Node node = map.get(uniqueId.toBase64String());
+            uniqueId = insert(hexString, node != null ? node.value : uniqueId);
+        }
+        return uniqueId;
+    }
+
+    /**
+     * Gets the number of cached strings.
+     *
+     * @return the size
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * Gets the max number of cached strings.
+     *
+     * @return the maximum size
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Gets the number of lookups found in the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups not found in the cache.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of entries evicted.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the ratio of lookups found in the cache.
+     *
+     * @return the hit rate, 1.0 if there is no lookup
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 1.0 : (double) hitCount / total;
+    }
+
+    /**
+     * Removes all the cached entries, the statistics are kept.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            map.clear();
+            clock = new Node[Math.min(maximumSize, INITIAL_CAPACITY)];
+            size = 0;
+            hand = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "UniqueIdCache [size=" + size() + ", maximumSize=" + maximumSize + ", hitCount=" + getHitCount() + ", missCount=" + getMissCount()
+                + ", evictionCount=" + getEvictionCount() + "]";
+    }
+
+    private UniqueId lookup(final String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        Node node = map.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        if (!node.referenced) {
+            // only write when changed, so the hot entries do not bounce between CPU caches
+            node.referenced = true;
+        }
+        hits.increment();
+        return node.value;
+    }
+
+    private UniqueId insert(final String key, final UniqueId value) {
+        lock.lock();
+        try {
+            Node node = map.get(key);
+            if (node != null) {
+                // decoded by another thread meanwhile
+                return node.value;
+            }
+            node = new Node(key, value);
+            if (size < maximumSize) {
+                if (size == clock.length) {
+                    clock = Arrays.copyOf(clock, (int) Math.min(maximumSize, 2L * size));
+                }
+                clock[size++] = node;
+            } else {
+                for (;;) {
+                    Node victim = clock[hand];
+                    if (victim.referenced) {
+                        victim.referenced = false;
+                        hand = (hand + 1) % maximumSize;
+                    } else {
+                        map.remove(victim.key);
+                        evictions.increment();
+                        clock[hand] = node;
+                        hand = (hand + 1) % maximumSize;
+                        break;
+                    }
+                }
+            }
+            map.put(key, node);
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A cached entry.
+     */
+    private static final class Node {
+        private final String key;
+
+        private final UniqueId value;
+
+        private volatile boolean referenced;
+
+        Node(final String key, final UniqueId value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fintx.util;
+
+import java.util.Arrays;
+
+/**
+ * Hexadecimal and base64 (without padding) codecs of the id layouts.
+ *
+ */
+final class UniqueIdCodec {
+
+    private static final char[] HEX_CHARS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+    // base64 URL safe alphabet (RFC 4648)
+    private static final char[] BASE64_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    // the same characters as BASE64_CHARS but in ASCII order, so the strings sort like the ids
+    private static final char[] SORTABLE_BASE64_CHARS = "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz".toCharArray();
+
+    private static final byte[] HEX_VALUES = values("0123456789abcdef".toCharArray(), "0123456789ABCDEF".toCharArray());
+
+    private static final byte[] BASE64_VALUES = values(BASE64_CHARS);
+
+    private static final byte[] SORTABLE_BASE64_VALUES = values(SORTABLE_BASE64_CHARS);
+
+    private UniqueIdCodec() {
+    }
+
+    /**
+     * Converts byte array into a hexadecimal string representation.
+     *
+     * @param bytes the byte array
+     * @return a string
+     */
+    static String toHexString(final byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        int i = 0;
+        for (byte b : bytes) {
+            chars[i++] = HEX_CHARS[b >> 4 & 0xf];
+            chars[i++] = HEX_CHARS[b & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Parse the hexadecimal string (base16 encoding) to byte array.
+     *
+     * @param s the hexadecimal string of even length
+     * @return the byte array
+     * @throws IllegalArgumentException if there is a character not hexadecimal
+     */
+    static byte[] parseHexString(final String s) {
+        byte[] b = new byte[s.length() / 2];
+        for (int i = 0, j = 0; i < b.length; i++) {
+            int bits = value(HEX_VALUES, s.charAt(j++)) << 4 | value(HEX_VALUES, s.charAt(j++));
+            if (bits < 0) {
+                throw new IllegalArgumentException("invalid hexadecimal character: [" + s + "]");
+            }
+            b[i] = (byte) bits;
+        }
+        return b;
+    }
+
+    /**
+     * Parse the first 4 bytes of the hexadecimal string, the other characters are not read.
+     *
+     * @param s the hexadecimal string of at least 8 characters
+     * @return the 4 bytes big endian, unsigned
+     * @throws IllegalArgumentException if there is a character not hexadecimal in the first 8 characters
+     */
+    static long parseHexTimestamp(final String s) {
+        long bits = 0;
+        for (int j = 0; j < 8; j++) {
+            int value = value(HEX_VALUES, s.charAt(j));
+            if (value < 0) {
+                throw new IllegalArgumentException("invalid hexadecimal character: [" + s + "]");
+            }
+            bits = bits << 4 | value;
+        }
+        return bits;
+    }
+
+    /**
+     * Converts byte array into a base64 string representation without padding.
+     *
+     * @param bytes the byte array
+     * @param sortable whether or not use the sortable alphabet
+     * @return a string
+     */
+    static String toBase64String(final byte[] bytes, final boolean sortable) {
+        final char[] alphabet = sortable ? SORTABLE_BASE64_CHARS : BASE64_CHARS;
+        final int length = bytes.length;
+        char[] chars = new char[(length * 8 + 5) / 6];
+        int i = 0;
+        int j = 0;
+        for (; i + 3 <= length; i += 3) {
+            int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+            chars[j++] = alphabet[bits >>> 18];
+            chars[j++] = alphabet[bits >>> 12 & 0x3f];
+            chars[j++] = alphabet[bits >>> 6 & 0x3f];
+            chars[j++] = alphabet[bits & 0x3f];
+        }
+        if (i < length) {
+            // one or two bytes left, the unused low bits are zero
+            int bits = (bytes[i] & 0xff) << 16 | (i + 1 < length ? (bytes[i + 1] & 0xff) << 8 : 0);
+            chars[j++] = alphabet[bits >>> 18];
+            chars[j++] = alphabet[bits >>> 12 & 0x3f];
+            if (i + 1 < length) {
+                chars[j++] = alphabet[bits >>> 6 & 0x3f];
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Parse the base64 string without padding to byte array.
+     *
+     * @param s the base64 string
+     * @param length the number of bytes
+     * @param sortable whether or not use the sortable alphabet
+     * @return the byte array
+     * @throws IllegalArgumentException if the length does not match, there is a character not in the alphabet or the unused low bits are not zero
+     */
+    static byte[] parseBase64String(final String s, final int length, final boolean sortable) {
+        final byte[] values = sortable ? SORTABLE_BASE64_VALUES : BASE64_VALUES;
+        if (s.length() != (length * 8 + 5) / 6) {
+            throw new IllegalArgumentException("invalid base64 length: [" + s + "]");
+        }
+        byte[] b = new byte[length];
+        int i = 0;
+        int j = 0;
+        for (; i + 3 <= length; i += 3) {
+            int bits = value(values, s.charAt(j++)) << 18 | value(values, s.charAt(j++)) << 12 | value(values, s.charAt(j++)) << 6
+                    | value(values, s.charAt(j++));
+            if (bits < 0) {
+                throw new IllegalArgumentException("invalid base64 character: [" + s + "]");
+            }
+            b[i] = (byte) (bits >>> 16);
+            b[i + 1] = (byte) (bits >>> 8);
+            b[i + 2] = (byte) bits;
+        }
+        if (i < length) {
+            int bits = value(values, s.charAt(j++)) << 18 | value(values, s.charAt(j++)) << 12;
+            if (i + 1 < length) {
+                bits |= value(values, s.charAt(j++)) << 6;
+            }
+            if (bits < 0 || (bits & (i + 1 < length ? 0xff : 0xffff)) != 0) {
+                throw new IllegalArgumentException("invalid base64 character: [" + s + "]");
+            }
+            b[i] = (byte) (bits >>> 16);
+            if (i + 1 < length) {
+                b[i + 1] = (byte) (bits >>> 8);
+            }
+        }
+        return b;
+    }
+
+    /**
+     * Parse the first 4 bytes of the base64 string, the other characters are not read.
+     *
+     * @param s the base64 string of at least 6 characters
+     * @param sortable whether or not use the sortable alphabet
+     * @return the 4 bytes big endian, unsigned
+     * @throws IllegalArgumentException if there is a character not in the alphabet in the first 6 characters
+     */
+    static long parseBase64Timestamp(final String s, final boolean sortable) {
+        final byte[] values = sortable ? SORTABLE_BASE64_VALUES : BASE64_VALUES;
+        // 6 characters are 36 bits, the low 4 bits are of the next byte
+        long bits = 0;
+        for (int j = 0; j < 6; j++) {
+            int value = value(values, s.charAt(j));
+            if (value < 0) {
+                throw new IllegalArgumentException("invalid base64 character: [" + s + "]");
+            }
+            bits = bits << 6 | value;
+        }
+        return bits >>> 4;
+    }
+
+    /**
+     * Gets the value of a character, negative if the character is not in the alphabet.
+     */
+    private static int value(final byte[] values, final char c) {
+        // a negative value makes the whole group negative when shifted no more then 18 bits
+        return c < 128 ? values[c] : -1;
+    }
+
+    /**
+     * Gets the reverse lookup table of alphabets.
+     *
+     * @param alphabets the characters, the index is the value
+     * @return the values indexed by character, -1 for characters not in the alphabets
+     */
+    private static byte[] values(final char[]... alphabets) {
+        byte[] values = new byte[128];
+        Arrays.fill(values, (byte) -1);
+        for (char[] alphabet : alphabets) {
+            for (int i = 0; i < alphabet.length; i++) {
+                values[alphabet[i]] = (byte) i;
+            }
+        }
+        return values;
+    }
+}
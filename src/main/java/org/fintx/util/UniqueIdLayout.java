@@ -0,0 +1,155 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fintx.util;
+
+/**
+ * <p>
+ * The id layouts, to detect which one a string or byte array is in, and to parse an id of any layout.
+ * </p>
+ *
+ * <p>
+ * The layouts are told apart by their length, and the 16 bytes layouts by the version in the high 4 bits of the first byte. So a byte array is only
+ * detected right when it is the raw bytes of an id ({@code toByteArray()}): the 16 bytes of {@link UniqueId#toUUIDByteArray()} could not be told apart
+ * from a {@link MilliUniqueId}, parse them with {@link UniqueId#fromUUIDByteArray(byte[])}. A base64 string is parsed as base64String, not as
+ * sortableBase64String.
+ * </p>
+ *
+ */
+public enum UniqueIdLayout {
+
+    /**
+     * The 15 bytes layout with time of second, see {@link UniqueId}.
+     */
+    SECOND(15, 20, 30),
+
+    /**
+     * The 16 bytes layout (version 1) with time of millisecond, see {@link MilliUniqueId}.
+     */
+    MILLISECOND(16, 22, 32);
+
+    private final int byteLength;
+
+    private final int base64Length;
+
+    private final int hexLength;
+
+    UniqueIdLayout(final int byteLength, final int base64Length, final int hexLength) {
+        this.byteLength = byteLength;
+        this.base64Length = base64Length;
+        this.hexLength = hexLength;
+    }
+
+    /**
+     * Gets the number of bytes.
+     *
+     * @return the byte length
+     */
+    public int getByteLength() {
+        return byteLength;
+    }
+
+    /**
+     * Gets the number of base64 (and sortable base64) characters.
+     *
+     * @return the base64 string length
+     */
+    public int getBase64Length() {
+        return base64Length;
+    }
+
+    /**
+     * Gets the number of hexadecimal characters.
+     *
+     * @return the hexadecimal string length
+     */
+    public int getHexLength() {
+        return hexLength;
+    }
+
+    /**
+     * Detects the layout of a string representation.
+     *
+     * @param idString hexString (base16) or base64String
+     * @return the layout, or null if the string could not be an id of any layout
+     * @throws IllegalArgumentException if idString is null
+     */
+    public static UniqueIdLayout of(final String idString) {
+        if (UniqueId.isValid(idString)) {
+            return SECOND;
+        } else if (MilliUniqueId.isValid(idString)) {
+            return MILLISECOND;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Detects the layout of a byte array.
+     *
+     * @param bytes the byte array
+     * @return the layout, or null if the bytes could not be an id of any layout
+     * @throws IllegalArgumentException if bytes is null
+     */
+    public static UniqueIdLayout of(final byte[] bytes) {
+        if (bytes == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        if (bytes.length == 15) {
+            return SECOND;
+        } else if (bytes.length == 16 && (bytes[0] >> 4 & 0xf) == MilliUniqueId.VERSION) {
+            return MILLISECOND;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Parses an id of any layout from its string representation.
+     *
+     * @param idString hexString (base16) or base64String
+     * @return the {@link UniqueId} or {@link MilliUniqueId} instance, see {@link UniqueIdentifier#getLayout()}
+     * @throws IllegalArgumentException if idString is null or not an id of any layout
+     */
+    public static UniqueIdentifier parse(final String idString) {
+        UniqueIdLayout layout = of(idString);
+        if (layout == SECOND) {
+            return idString.length() == SECOND.hexLength ? UniqueId.fromHexString(idString) : UniqueId.fromBase64String(idString);
+        } else if (layout == MILLISECOND) {
+            return idString.length() == MILLISECOND.hexLength ? MilliUniqueId.fromHexString(idString) : MilliUniqueId.fromBase64String(idString);
+        } else {
+            throw new IllegalArgumentException("Invalid id: [" + idString + "], it is not an id of any layout.");
+        }
+    }
+
+    /**
+     * Parses an id of any layout from its raw bytes ({@code toByteArray()}).
+     *
+     * @param bytes the byte array
+     * @return the {@link UniqueId} or {@link MilliUniqueId} instance, see {@link UniqueIdentifier#getLayout()}
+     * @throws IllegalArgumentException if bytes is null or not an id of any layout
+     */
+    public static UniqueIdentifier parse(final byte[] bytes) {
+        UniqueIdLayout layout = of(bytes);
+        if (layout == SECOND) {
+            return UniqueId.fromByteArray(bytes);
+        } else if (layout == MILLISECOND) {
+            return MilliUniqueId.fromByteArray(bytes);
+        } else {
+            throw new IllegalArgumentException("Invalid id: " + bytes.length + " bytes, it is not an id of any layout.");
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fintx.util;
+
+/**
+ * <p>
+ * The JDK dependent hot paths: the big endian byte array access of the binary layouts and the process identifier.
+ * </p>
+ *
+ * <p>
+ * This is the Java 8 baseline. The multi-release jar has a Java 11 version of this class (src/main/java11) with the same methods, so the callers do
+ * not know which one is loaded.
+ * </p>
+ *
+ */
+final class UniqueIdPlatform {
+
+    private UniqueIdPlatform() {
+    }
+
+    /**
+     * Gets the name of the implementation loaded, e.g. for the benchmark output.
+     *
+     * @return the name
+     */
+    static String getImplementation() {
+        return "java8";
+    }
+
+    /**
+     * Gets the process identifier of this JVM.
+     *
+     * @return the process identifier
+     * @throws RuntimeException if the process identifier could not be got
+     */
+    static long processId() {
+        String processName = java.lang.management.ManagementFactory.getRuntimeMXBean().getName();
+        if (processName.contains("@")) {
+            return Long.parseLong(processName.substring(0, processName.indexOf('@')));
+        } else {
+            throw new RuntimeException("Process name:'" + processName + "' is invalid!");
+        }
+    }
+
+    /**
+     * Gets 4 bytes big endian.
+     *
+     * @param bytes the byte array
+     * @param offset the index of the first byte
+     * @return the int
+     */
+    static int getInt(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16 | (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+    }
+
+    /**
+     * Puts 4 bytes big endian.
+     *
+     * @param bytes the byte array
+     * @param offset the index of the first byte
+     * @param value the int
+     */
+    static void putInt(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Gets 8 bytes big endian.
+     *
+     * @param bytes the byte array
+     * @param offset the index of the first byte
+     * @return the long
+     */
+    static long getLong(final byte[] bytes, final int offset) {
+        return (getInt(bytes, offset) & 0xffffffffL) << 32 | getInt(bytes, offset + 4) & 0xffffffffL;
+    }
+
+    /**
+     * Puts 8 bytes big endian.
+     *
+     * @param bytes the byte array
+     * @param offset the index of the first byte
+     * @param value the long
+     */
+    static void putLong(final byte[] bytes, final int offset, final long value) {
+        putInt(bytes, offset, (int) (value >>> 32));
+        putInt(bytes, offset + 4, (int) value);
+    }
+}
@@ -0,0 +1,272 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fintx.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * A pool of pre-generated {@code UniqueId}s for latency sensitive callers.
+ * </p>
+ *
+ * <p>
+ * It is a single producer and multiple consumers ring buffer. The producer is a background daemon thread which keeps the ring topped up using
+ * {@link UniqueId#get()}. Consumers take with {@link #poll()}, which is wait free (one fetch-and-add, a few volatile reads and one swap, no clock
+ * read) and falls back to {@link UniqueId#get()} when the pool is empty. The fetch-and-add and the swap are what a wait free poll of many consumers needs:
+ * the first gives every consumer its own position without a retry loop, the second hands the id of a slot out once when the refill thread has already
+ * reused the slot of a consumer that fell a lap behind. The refill thread parks while the ring is more than half full, the consumer taking it to half
+ * wakes it up.
+ * </p>
+ *
+ * <p>
+ * Pooled ids never lag the wall clock more than the configured seconds, give or take the wake up of the refill thread: the refill thread wakes up at
+ * the start of every second, publishes the oldest fresh second in a volatile field and discards the stale ids at the head of the ring, topping it up
+ * again. Consumers skip the ids older than the published second.
+ * </p>
+ * <p>
+ * A failure of the generation (e.g. the machine time going back more than a second) is logged and the refill thread retries later, consumers fall back
+ * to {@link UniqueId#get()} meanwhile.
+ * </p>
+ * <p>
+ * An id taken from the pool is handed out at most once. Ids discarded as stale or overwritten in the ring are never handed out, which only leaves gaps in
+ * the counter.
+ * </p>
+ *
+ */
+public final class UniqueIdPool implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(UniqueIdPool.class.getName());
+
+    private static final long RETRY_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Supplier<UniqueId> generator;
+
+    private final AtomicReferenceArray<UniqueId> slots;
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final int maxLagSeconds;
+
+    // the consumers wake the refill thread up when the pooled ids left are no more then it
+    private final int lowWater;
+
+    // next position to take, shared by the consumers
+    private final AtomicLong head = new AtomicLong(0);
+
+    // next position to fill, only written by the refill thread
+    private volatile long tail;
+
+    // the ids before this second are stale, only written by the refill thread
+    private volatile long staleBefore;
+
+    private volatile boolean running = true;
+
+    // the refill thread is parked or going to park
+    private volatile boolean parked;
+
+    private final Thread refiller;
+
+    /**
+     * Constructs a new pool and starts its refill thread.
+     *
+     * @param capacity the max number of pooled ids, rounded up to a power of two
+     * @param maxLagSeconds the max seconds a pooled id could lag the wall clock
+     * @throws IllegalArgumentException if capacity is not positive or maxLagSeconds is negative
+     */
+    public UniqueIdPool(final int capacity, final int maxLagSeconds) {
+        this(capacity, maxLagSeconds, UniqueId::get);
+    }
+
+    /**
+     * Constructs a new pool of the ids of the generator and starts its refill thread.
+     *
+     * @param capacity the max number of pooled ids, rounded up to a power of two
+     * @param maxLagSeconds the max seconds a pooled id could lag the wall clock
+     * @param generator the generator of new ids
+     * @throws IllegalArgumentException if capacity is not positive or maxLagSeconds is negative
+     */
+    UniqueIdPool(final int capacity, final int maxLagSeconds, final Supplier<UniqueId> generator) {
+        if (generator == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("The capacity must be between 1 and 1073741824.");
+        }
+        if (maxLagSeconds < 0) {
+            throw new IllegalArgumentException("The max lag seconds must not be negative.");
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.maxLagSeconds = maxLagSeconds;
+        this.lowWater = this.capacity / 2;
+        this.generator = generator;
+        this.slots = new AtomicReferenceArray<UniqueId>(this.capacity);
+        this.staleBefore = currentSeconds() - maxLagSeconds;
+        this.refiller = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                refill();
+            }
+
+        }, "UniqueIdPool-refill");
+        this.refiller.setDaemon(true);
+        this.refiller.start();
+    }
+
+    /**
+     * Takes a pooled id, or generates a new one if the pool is empty.
+     *
+     * @return the UniqueId instance
+     */
+    public UniqueId poll() {
+        UniqueId id = take();
+        return id != null ? id : UniqueId.get();
+    }
+
+    /**
+     * Gets the capacity of this pool.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the max seconds a pooled id could lag the wall clock.
+     *
+     * @return the max lag seconds
+     */
+    public int getMaxLagSeconds() {
+        return maxLagSeconds;
+    }
+
+    /**
+     * Gets the approximate number of pooled ids.
+     *
+     * @return the number of pooled ids
+     */
+    public int size() {
+        long size = tail - head.get();
+        return size <= 0 ? 0 : (int) Math.min(size, capacity);
+    }
+
+    /**
+     * Stops the refill thread. The pooled ids left are still handed out by {@link #poll()}.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(refiller);
+    }
+
+    /**
+     * Takes a pooled id.
+     *
+     * @return the UniqueId or null if there is no fresh id pooled
+     */
+    private UniqueId take() {
+        long position = head.getAndIncrement();
+        long left = tail - position;
+        if (left <= lowWater + 1 && parked) {
+            LockSupport.unpark(refiller);
+        }
+        if (left > 0) {
+            UniqueId id = slots.getAndSet((int) position & mask, null);
+            // null means the id was overwritten by a newer round and taken already
+            if (id != null && id.getTimestamp() >= staleBefore) {
+                return id;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The refill thread loop.
+     */
+    private void refill() {
+        boolean failed = false;
+        while (running) {
+            final long stale = currentSeconds() - maxLagSeconds;
+            staleBefore = stale;
+            boolean discarded = false;
+            // ids are pooled in order, so discarding from the head until the first fresh one drops all the stale ones
+            for (;;) {
+                long position = head.get();
+                if (position >= tail) {
+                    break;
+                }
+                UniqueId id = slots.get((int) position & mask);
+                if (id != null && id.getTimestamp() >= stale) {
+                    break;
+                }
+                if (head.compareAndSet(position, position + 1)) {
+                    slots.compareAndSet((int) position & mask, id, null);
+                    discarded = true;
+                }
+            }
+            // woken up by the clock only, the ring more than half full is left as it is
+            if (failed || discarded || tail - head.get() <= lowWater) {
+                long position = tail;
+                if (position < head.get()) {
+                    // consumers ran past the tail when the pool was empty
+                    position = head.get();
+                }
+                try {
+                    while (running && position - head.get() < capacity) {
+                        slots.lazySet((int) position & mask, generator.get());
+                        tail = ++position;
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to refill the UniqueId pool, retry later.", e);
+                    failed = true;
+                    LockSupport.parkNanos(this, RETRY_INTERVAL_NANOS);
+                    continue;
+                }
+                failed = false;
+            }
+            parked = true;
+            // checked again after parked is set, so a consumer taking the ring to the low water either sees parked or is seen here
+            if (running && tail - head.get() > lowWater) {
+                LockSupport.parkNanos(this, nanosUntilNextSecond());
+            }
+            parked = false;
+        }
+    }
+
+    /**
+     * Gets the nanoseconds until the next second, when the pooled ids of a second may go stale.
+     *
+     * @return the nanoseconds
+     */
+    private static long nanosUntilNextSecond() {
+        return TimeUnit.MILLISECONDS.toNanos(1000L - System.currentTimeMillis() % 1000L);
+    }
+
+    private static long currentSeconds() {
+        return (System.currentTimeMillis() / 1000L) & 0xffffffffL;
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fintx.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * A registry of the generator identities (machine identifier and process identifier) in a local file, the stand-in of a cluster wide registry.
+ * </p>
+ *
+ * <p>
+ * The file has a line per identity: the identity (12 hexadecimal characters of machine, a colon and the decimal pid), a space and the owner, e.g.
+ * {@code 0a1b2c3d4e5f:1234 order-service-1}. Lines beginning with '#' are comments. Registering locks the file, so the processes sharing the file
+ * register one by one, and a process started with the identity of another one could know it before generating any id.
+ * </p>
+ *
+ */
+public final class UniqueIdRegistry {
+
+    // file locks are held by the JVM, so the threads of a JVM take turns here. Not a monitor, so a virtual thread waiting for the file IO does not pin
+    // its carrier thread.
+    private static final ReentrantLock JVM_LOCK = new ReentrantLock();
+
+    private final Path file;
+
+    /**
+     * Constructs a registry of a file, the file is created when the first identity is registered.
+     *
+     * @param file the registry file
+     * @throws IllegalArgumentException if file is null
+     */
+    public UniqueIdRegistry(final Path file) {
+        if (file == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        this.file = file;
+    }
+
+    /**
+     * Gets the identity string of a generator.
+     *
+     * @param machineIdentifier the machine identifier
+     * @param processIdentifier the process identifier
+     * @return the identity, e.g. 0a1b2c3d4e5f:1234
+     */
+    public static String identity(final long machineIdentifier, final int processIdentifier) {
+        return String.format("%012x:%d", machineIdentifier & 0x0000ffffffffffffL, processIdentifier & 0xffff);
+    }
+
+    /**
+     * Registers the identity of this process.
+     *
+     * @param owner the owner, e.g. the service instance name
+     * @return true if registered (or registered before by the same owner), false if the identity is registered by another owner
+     * @throws IOException if an I/O error occurs
+     */
+    public boolean registerCurrentProcess(final String owner) throws IOException {
+        return register(UniqueId.getGeneratedMachineIdentifier(), UniqueId.getGeneratedProcessIdentifier(), owner);
+    }
+
+    /**
+     * Registers an identity.
+     *
+     * @param machineIdentifier the machine identifier
+     * @param processIdentifier the process identifier
+     * @param owner the owner, e.g. the service instance name, without white space
+     * @return true if registered (or registered before by the same owner), false if the identity is registered by another owner
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if owner is null, empty or contains white space
+     */
+    public boolean register(final long machineIdentifier, final int processIdentifier, final String owner) throws IOException {
+        if (owner == null || owner.isEmpty() || !owner.matches("\\S+")) {
+            throw new IllegalArgumentException("The owner must not be empty or contain white space.");
+        }
+        String identity = identity(machineIdentifier, processIdentifier);
+        JVM_LOCK.lock();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                String registered = parse(read(channel)).get(identity);
+                if (registered != null) {
+                    return registered.equals(owner);
+                }
+                channel.position(channel.size());
+                ByteBuffer line = ByteBuffer.wrap((identity + " " + owner + "\n").getBytes(StandardCharsets.UTF_8));
+                while (line.hasRemaining()) {
+                    channel.write(line);
+                }
+                channel.force(false);
+                return true;
+            } finally {
+                lock.release();
+            }
+        } finally {
+            JVM_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Gets the owner of an identity.
+     *
+     * @param machineIdentifier the machine identifier
+     * @param processIdentifier the process identifier
+     * @return the owner, null if the identity is not registered
+     * @throws IOException if an I/O error occurs
+     */
+    public String getOwner(final long machineIdentifier, final int processIdentifier) throws IOException {
+        return getOwners().get(identity(machineIdentifier, processIdentifier));
+    }
+
+    /**
+     * Gets all the registered identities.
+     *
+     * @return the owners by identity, in the registered order
+     * @throws IOException if an I/O error occurs
+     */
+    public Map<String, String> getOwners() throws IOException {
+        if (!file.toFile().exists()) {
+            return new LinkedHashMap<String, String>();
+        }
+        JVM_LOCK.lock();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+            try {
+                return parse(read(channel));
+            } finally {
+                lock.release();
+            }
+        } finally {
+            JVM_LOCK.unlock();
+        }
+    }
+
+    private static String read(final FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        channel.position(0);
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // read until full
+        }
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parse(final String content) {
+        Map<String, String> owners = new LinkedHashMap<String, String>();
+        for (String line : content.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+", 2);
+            if (fields.length == 2 && !owners.containsKey(fields[0])) {
+                owners.put(fields[0], fields[1]);
+            }
+        }
+        return owners;
+    }
+}
@@ -0,0 +1,374 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fintx.util;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>
+ * The timestamp and counter source of the {@code UniqueId}s of a process, lock free.
+ * </p>
+ *
+ * <p>
+ * The sequence is a state of timestamp &lt;&lt; 24 | counter. The mode is selected process wide by the system property
+ * {@value #MODE_PROPERTY}, see {@link Mode}. In RESTART mode the identity could be registered at startup, see {@link #register}. The clock is injectable, so the rollover, the machine time going back and the round of 2^32 seconds
+ * could be tested.
+ * </p>
+ *
+ */
+final class UniqueIdSequencer {
+
+    /**
+     * The system property to select the mode of the process: {@code continuous} (the default) or {@code restart}.
+     */
+    static final String MODE_PROPERTY = "org.fintx.util.UniqueId.counter";
+
+    /**
+     * The system property of the {@link UniqueIdRegistry} file to register the identity of the process in, in RESTART mode.
+     */
+    static final String REGISTRY_PROPERTY = "org.fintx.util.UniqueId.registry";
+
+    /**
+     * The system property of the owner registered with the identity, e.g. the service instance name.
+     */
+    static final String OWNER_PROPERTY = "org.fintx.util.UniqueId.owner";
+
+    private static final int COUNTER_BITS = 24;
+
+    private static final int LOW_ORDER_THREE_BYTES = 0x00ffffff;
+
+    /**
+     * The counter modes.
+     */
+    enum Mode {
+
+        /**
+         * The counter starts at a random value and keeps incrementing across seconds, wrapping around modulo 2^24. No more then 16777216 ids could be
+         * generated in a second, and the machine time going back more then a second is rejected.
+         */
+        CONTINUOUS,
+
+        /**
+         * The counter restarts from 0 at every new second, so the ids of a process are dense and strictly increasing (in the order generated). When
+         * the counter runs out, the next second is used in advance; when the machine time goes back, the last second is kept until the machine time
+         * catches up.
+         *
+         * <p>
+         * No id is generated in the second the sequencer starts, the first one is at the counter 0 of the next second: a process restarted with the
+         * same identity in the second of the last id of the previous run (e.g. pid 1 of a container restarted at once) does not generate its ids again.
+         * The previous run is not known, so it could not survive a machine time behind the last id of the previous run: after the machine time went
+         * back (e.g. a time server step), or when the previous run used seconds in advance, the ids of those seconds are generated again.
+         * </p>
+         *
+         * <p>
+         * The ids rest on the identity only: without the random initial counter, two generators with the same machine and process identifier (a pid
+         * reused in a container with a cloned MAC address, a pid truncated to 16 bits, or a second class loader of the same JVM) generate the same
+         * ids from the first second. Set {@value #REGISTRY_PROPERTY} and {@value #OWNER_PROPERTY} to fail at startup if the identity is registered by
+         * another owner.
+         * </p>
+         */
+        RESTART
+    }
+
+    private final Mode mode;
+
+    // seconds since the Unix epoch
+    private final LongSupplier clock;
+
+    // RESTART: the state of the last id. CONTINUOUS: the next counter, the last timestamp (to prevent time change back maybe when use time server to
+    // correct the machine time) and the counter when the last timestamp advanced.
+    private final UniqueIdSequencerState fields;
+
+    /**
+     * Constructs a new sequencer.
+     *
+     * @param mode the counter mode
+     * @param clock the seconds since the Unix epoch
+     * @param initialCounter the first counter of CONTINUOUS mode
+     */
+    UniqueIdSequencer(final Mode mode, final LongSupplier clock, final int initialCounter) {
+        if (mode == null || clock == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        this.mode = mode;
+        this.clock = clock;
+        // as if the last counter of the current second was used, so the first id of RESTART mode is at the counter 0 of the next second
+        this.fields = new UniqueIdSequencerState((currentSeconds() & 0xffffffffL) << COUNTER_BITS | LOW_ORDER_THREE_BYTES, initialCounter);
+    }
+
+    /**
+     * Constructs the sequencer of this process: the mode of the system property, the system clock and a random initial counter.
+     *
+     * @return the sequencer
+     * @throws IllegalArgumentException if the system property is not a mode
+     */
+    static UniqueIdSequencer system() {
+        return new UniqueIdSequencer(mode(System.getProperty(MODE_PROPERTY)), () -> System.currentTimeMillis() / 1000L, new SecureRandom().nextInt());
+    }
+
+    /**
+     * Registers the identity of the process in RESTART mode, if a registry file is given.
+     *
+     * <p>
+     * The owner is kept with the identity, so the same owner restarted with the same identity is accepted, and another owner is rejected. A second
+     * class loader of the same JVM has the same owner, so it is not detected.
+     * </p>
+     *
+     * @param mode the counter mode, nothing is registered in CONTINUOUS mode
+     * @param registryFile the registry file, null or empty if none
+     * @param owner the owner, e.g. the service instance name, without white space
+     * @param machineIdentifier the machine identifier
+     * @param processIdentifier the process identifier
+     * @throws IllegalArgumentException if a registry file is given without an owner, or the identity is registered by another owner
+     * @throws RuntimeException if the registry file could not be read or written
+     */
+    static void register(final Mode mode, final String registryFile, final String owner, final long machineIdentifier,
+            final int processIdentifier) {
+        if (mode != Mode.RESTART || registryFile == null || registryFile.trim().isEmpty()) {
+            return;
+        }
+        if (owner == null || owner.trim().isEmpty()) {
+            throw new IllegalArgumentException("The " + OWNER_PROPERTY + " must be set with the " + REGISTRY_PROPERTY + ".");
+        }
+        UniqueIdRegistry registry = new UniqueIdRegistry(Paths.get(registryFile.trim()));
+        try {
+            if (!registry.register(machineIdentifier, processIdentifier, owner.trim())) {
+                throw new IllegalArgumentException("The identity " + UniqueIdRegistry.identity(machineIdentifier, processIdentifier)
+                        + " is registered by another owner then " + owner.trim() + ", the restart mode would generate duplicated ids.");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not register the identity in " + registryFile, e);
+        }
+    }
+
+    /**
+     * Parses a mode.
+     *
+     * @param value the mode name, case insensitive, null for CONTINUOUS
+     * @return the mode
+     * @throws IllegalArgumentException if the value is not a mode
+     */
+    static Mode mode(final String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return Mode.CONTINUOUS;
+        }
+        for (Mode mode : Mode.values()) {
+            if (mode.name().equalsIgnoreCase(value.trim())) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Invalid " + MODE_PROPERTY + ": [" + value + "], it must be continuous or restart.");
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Gets the state of a new id.
+     *
+     * @return timestamp &lt;&lt; 24 | counter, the timestamp is unsigned
+     * @throws IllegalArgumentException in CONTINUOUS mode, if the machine time went back more then one second
+     */
+    long next() {
+        if (mode == Mode.RESTART) {
+            for (;;) {
+                long last = fields.getState();
+                long seconds = currentSeconds();
+                if (isNewSecond(seconds, last >>> COUNTER_BITS)) {
+                    // the only compare and set at the rollover, the losers see the new second
+                    long next = seconds << COUNTER_BITS;
+                    if (fields.compareAndSetState(last, next)) {
+                        return next;
+                    }
+                } else {
+                    // the counter overflow carries into the timestamp
+                    return fields.incrementAndGetState();
+                }
+            }
+        }
+        final int seconds = (int) currentSeconds();
+        final int counter = fields.getAndAddCounter(1);
+        return (checkTimestamp(seconds, counter) & 0xffffffffL) << COUNTER_BITS | counter & LOW_ORDER_THREE_BYTES;
+    }
+
+    /**
+     * Generates a batch of new ids with one reservation.
+     *
+     * <p>
+     * In CONTINUOUS mode it generates no more ids then the counters left in the current second (approximately, as it is not synchronized with other
+     * generating threads), so the counter does not wrap around within a second. The caller could generate the rest in the next second. In RESTART mode
+     * it always generates all, the overflow carries into the next second.
+     * </p>
+     *
+     * @param ids the array to fill
+     * @param offset the first index to fill
+     * @param length the number of ids wanted
+     * @param machineIdentifier the machine identifier
+     * @param processIdentifier the process identifier
+     * @return the number of ids generated, 0 if no counter is left in the current second
+     */
+    int nextBatch(final UniqueId[] ids, final int offset, final int length, final long machineIdentifier, final short processIdentifier) {
+        if (length <= 0) {
+            return 0;
+        }
+        if (mode == Mode.RESTART) {
+            long first;
+            for (;;) {
+                long last = fields.getState();
+                long seconds = currentSeconds();
+                if (isNewSecond(seconds, last >>> COUNTER_BITS)) {
+                    first = seconds << COUNTER_BITS;
+                    if (fields.compareAndSetState(last, first + length - 1)) {
+                        break;
+                    }
+                } else {
+                    first = fields.getAndAddState(length) + 1;
+                    break;
+                }
+            }
+            for (int i = 0; i < length; i++) {
+                long state = first + i;
+                ids[offset + i] = UniqueId.fromFields((int) (state >>> COUNTER_BITS), machineIdentifier, processIdentifier, (int) state);
+            }
+            return length;
+        }
+        final int seconds = (int) currentSeconds();
+        final int size = Math.min(length, remainingCounters(seconds));
+        if (size <= 0) {
+            return 0;
+        }
+        final int counter = fields.getAndAddCounter(size);
+        final int timestamp = checkTimestamp(seconds, counter);
+        for (int i = 0; i < size; i++) {
+            ids[offset + i] = UniqueId.fromFields(timestamp, machineIdentifier, processIdentifier, counter + i);
+        }
+        return size;
+    }
+
+    /**
+     * Gets the current value of the counter: the next counter in CONTINUOUS mode, the last counter in RESTART mode.
+     *
+     * @return the counter
+     */
+    int getCurrentCounter() {
+        return mode == Mode.RESTART ? (int) fields.getState() & LOW_ORDER_THREE_BYTES : fields.getCounter();
+    }
+
+    /**
+     * Gets the timestamp of the last id.
+     *
+     * @return the timestamp of second
+     */
+    long getCurrentTimestamp() {
+        return mode == Mode.RESTART ? fields.getState() >>> COUNTER_BITS & 0xffffffffL : fields.getTimestamp() & 0xffffffffL;
+    }
+
+    private long currentSeconds() {
+        return clock.getAsLong() & 0xffffffffL;
+    }
+
+    /**
+     * Checks if the machine time reached a second after the last one, comparing in the circle of 2^32 seconds.
+     */
+    private static boolean isNewSecond(final long seconds, final long last) {
+        // the last second could be 2^32 after the counter carried at the end of a round, and the machine time could go back across the end of a
+        // round, so a second less then half a round after the last one is new and the others are the machine time going back
+        final long diff = (seconds - last) & 0xffffffffL;
+        return diff != 0 && diff < 0x80000000L;
+    }
+
+    /**
+     * Gets the number of counters left in the given second.
+     *
+     * @param timestamp of second
+     * @return the number of counters left
+     */
+    private int remainingCounters(final int timestamp) {
+        if ((timestamp & 0xffffffffL) != fields.getTimestamp()) {
+            return LOW_ORDER_THREE_BYTES + 1;
+        }
+        long used = (fields.getCounter() - fields.getSecondFirstCounter()) & 0xffffffffL;
+        return used >= LOW_ORDER_THREE_BYTES + 1 ? 0 : (int) (LOW_ORDER_THREE_BYTES + 1 - used);
+    }
+
+    /**
+     * Checks the timestamp against the last timestamp of this process and advances the last timestamp if needed.
+     *
+     * <p>
+     * It is lock free (compare and set only), so a virtual thread never pins its carrier thread here even when thousands of them reach the second
+     * rollover at the same time.
+     * </p>
+     *
+     * @param timestamp of second
+     * @param counter the counter got with the timestamp
+     * @return the timestamp to be used by the new instance
+     * @throws IllegalArgumentException if the timestamp, and the machine time read again, is more than one second less than the timestamp last time
+     */
+    private int checkTimestamp(int timestamp, final int counter) {
+        long seconds = timestamp & 0xffffffffL;
+        boolean advanced = false;
+        boolean reread = false;
+        for (;;) {
+            long current = fields.getTimestamp();
+            if (seconds == current) {
+            // @formatter:off
+            // mostly
+            // @formatter:on
+                return timestamp;
+            } else if (seconds > current) {
+            // @formatter:off
+            // once per second or less, only one thread wins and the others see the new timestamp
+            // @formatter:on
+                if (fields.compareAndSetTimestamp(current, seconds)) {
+                    fields.setSecondFirstCounter(counter);
+                    return timestamp;
+                }
+                advanced = true;
+            } else if (current - seconds == 1L) {
+            // @formatter:off
+            // lastTimestamp increased after timestamp generated
+            // @formatter:on
+                return advanced ? (int) current : timestamp;
+            } else if (advanced) {
+                return (int) current;
+            } else if (current - seconds >= 0x7fffffffL) {
+                // timestamp is in the new round of zero to 0xffffffffL. 0x7fffffffL is half of 0xffffffffL.
+                // A round is about 69 years, so the gap between last timestamp in the last round and new timestamp in this round will not less then 34
+                // years.
+                if (fields.compareAndSetTimestamp(current, seconds)) {
+                    fields.setSecondFirstCounter(counter);
+                    return timestamp;
+                }
+            } else if (!reread) {
+            // @formatter:off
+            // the thread could be paused (e.g. by GC) for seconds after the timestamp generated, check again with the machine time now, so only the
+            // machine time going back more then one second is rejected
+            // @formatter:on
+                reread = true;
+                seconds = currentSeconds();
+                timestamp = (int) seconds;
+            } else {
+                throw new IllegalArgumentException(
+                        "The timestamp must not be less then the timestamp last time. (Maybe the machine correct time using time server).");
+            }
+        }
+    }
+}
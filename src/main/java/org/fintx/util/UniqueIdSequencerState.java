@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fintx.util;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * <p>
+ * The atomic fields of a {@link UniqueIdSequencer}, in one object so the sequencer reaches all of them with one reference.
+ * </p>
+ *
+ * <p>
+ * Every access is volatile. There is no Java 11 version in the multi-release jar, {@code VarHandle}s with the same accesses measured no faster
+ * than the field updaters.
+ * </p>
+ *
+ */
+final class UniqueIdSequencerState {
+
+    private static final AtomicLongFieldUpdater<UniqueIdSequencerState> STATE = AtomicLongFieldUpdater.newUpdater(UniqueIdSequencerState.class,
+            "state");
+
+    private static final AtomicIntegerFieldUpdater<UniqueIdSequencerState> COUNTER = AtomicIntegerFieldUpdater
+            .newUpdater(UniqueIdSequencerState.class, "counter");
+
+    private static final AtomicLongFieldUpdater<UniqueIdSequencerState> TIMESTAMP = AtomicLongFieldUpdater
+            .newUpdater(UniqueIdSequencerState.class, "timestamp");
+
+    // RESTART: the state of the last id
+    private volatile long state;
+
+    // CONTINUOUS: the next counter, the last timestamp and the counter when the last timestamp advanced
+    private volatile int counter;
+
+    private volatile long timestamp;
+
+    private volatile int secondFirstCounter;
+
+    /**
+     * Constructs the fields.
+     *
+     * @param state the initial state of RESTART mode
+     * @param counter the initial counter of CONTINUOUS mode
+     */
+    UniqueIdSequencerState(final long state, final int counter) {
+        this.state = state;
+        this.counter = counter;
+    }
+
+    long getState() {
+        return state;
+    }
+
+    boolean compareAndSetState(final long expect, final long update) {
+        return STATE.compareAndSet(this, expect, update);
+    }
+
+    long incrementAndGetState() {
+        return STATE.incrementAndGet(this);
+    }
+
+    long getAndAddState(final long delta) {
+        return STATE.getAndAdd(this, delta);
+    }
+
+    int getCounter() {
+        return counter;
+    }
+
+    int getAndAddCounter(final int delta) {
+        return COUNTER.getAndAdd(this, delta);
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    boolean compareAndSetTimestamp(final long expect, final long update) {
+        return TIMESTAMP.compareAndSet(this, expect, update);
+    }
+
+    int getSecondFirstCounter() {
+        return secondFirstCounter;
+    }
+
+    void setSecondFirstCounter(final int counter) {
+        secondFirstCounter = counter;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fintx.util;
+
+import java.time.Instant;
+
+/**
+ * <p>
+ * An id of any layout: the common view of {@link UniqueId} and {@link MilliUniqueId}, e.g. for the ids parsed by {@link UniqueIdLayout#parse(String)}.
+ * </p>
+ *
+ * <p>
+ * The timestamps are not in the common view, as they are in seconds or in milliseconds by the layout; {@link #getInstant()} is in both.
+ * </p>
+ *
+ */
+public interface UniqueIdentifier {
+
+    /**
+     * Gets the layout of the id.
+     *
+     * @return the layout
+     */
+    UniqueIdLayout getLayout();
+
+    /**
+     * Convert to the raw bytes of the layout.
+     *
+     * @return the byte array, {@link UniqueIdLayout#getByteLength()} bytes
+     */
+    byte[] toByteArray();
+
+    /**
+     * Gets the timestamp as an {@code Instant}.
+     *
+     * @return the Instant
+     */
+    Instant getInstant();
+
+    /**
+     * Gets the machine identifier (physical MAC address).
+     *
+     * @return the machine identifier
+     */
+    long getMachineIdentifier();
+
+    /**
+     * Gets the process identifier.
+     *
+     * @return the process identifier
+     */
+    int getProcessIdentifier();
+
+    /**
+     * Gets the counter.
+     *
+     * @return the counter
+     */
+    int getCounter();
+
+    /**
+     * Converts the id into its hexadecimal string representation.
+     *
+     * @return a string representation of the id in hexadecimal format
+     */
+    String toHexString();
+
+    /**
+     * Converts the id into its base64 URL safe string representation.
+     *
+     * @return a string representation of the id in base64 format
+     */
+    String toBase64String();
+
+    /**
+     * Converts the id into its sortable base64 string representation.
+     *
+     * @return a string representation of the id in sortable base64 format
+     */
+    String toSortableBase64String();
+}
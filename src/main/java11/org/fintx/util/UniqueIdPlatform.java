@@ -0,0 +1,105 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fintx.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * <p>
+ * The JDK dependent hot paths: the big endian byte array access of the binary layouts and the process identifier.
+ * </p>
+ *
+ * <p>
+ * This is the Java 11 version in META-INF/versions/11 of the multi-release jar. The byte array views access 4 or 8 bytes at once (bounds checked
+ * once, byte swapped by an intrinsic), and the process identifier is from {@link ProcessHandle} instead of parsing the runtime name.
+ * </p>
+ *
+ */
+final class UniqueIdPlatform {
+
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private UniqueIdPlatform() {
+    }
+
+    /**
+     * Gets the name of the implementation loaded, e.g. for the benchmark output.
+     *
+     * @return the name
+     */
+    static String getImplementation() {
+        return "java11";
+    }
+
+    /**
+     * Gets the process identifier of this JVM.
+     *
+     * @return the process identifier
+     * @throws UnsupportedOperationException if the process identifier could not be got
+     */
+    static long processId() {
+        return ProcessHandle.current().pid();
+    }
+
+    /**
+     * Gets 4 bytes big endian.
+     *
+     * @param bytes the byte array
+     * @param offset the index of the first byte
+     * @return the int
+     */
+    static int getInt(final byte[] bytes, final int offset) {
+        return (int) INT.get(bytes, offset);
+    }
+
+    /**
+     * Puts 4 bytes big endian.
+     *
+     * @param bytes the byte array
+     * @param offset the index of the first byte
+     * @param value the int
+     */
+    static void putInt(final byte[] bytes, final int offset, final int value) {
+        INT.set(bytes, offset, value);
+    }
+
+    /**
+     * Gets 8 bytes big endian.
+     *
+     * @param bytes the byte array
+     * @param offset the index of the first byte
+     * @return the long
+     */
+    static long getLong(final byte[] bytes, final int offset) {
+        return (long) LONG.get(bytes, offset);
+    }
+
+    /**
+     * Puts 8 bytes big endian.
+     *
+     * @param bytes the byte array
+     * @param offset the index of the first byte
+     * @param value the long
+     */
+    static void putLong(final byte[] bytes, final int offset, final long value) {
+        LONG.set(bytes, offset, value);
+    }
+}
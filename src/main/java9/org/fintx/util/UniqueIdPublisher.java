@@ -0,0 +1,207 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.fintx.util;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * A {@code Flow.Publisher} of new {@code UniqueId}s honoring the demand of its subscribers.
+ * </p>
+ *
+ * <p>
+ * On request(n) the subscriber gets n ids generated in one batch (the same way as {@link UniqueIdBatchSupplier}). When the counters of the current second
+ * are used up, the rest of the demand is scheduled to the next second instead of blocking a thread. The stream never completes, the subscriber cancels
+ * the subscription when it has enough.
+ * </p>
+ * <p>
+ * Only available on Java 9 or later: it is compiled with {@code --release 9} into META-INF/versions/9 of the multi-release jar by the builds on JDK 9
+ * or later, which the releases are.
+ * </p>
+ *
+ */
+public final class UniqueIdPublisher implements Flow.Publisher<UniqueId> {
+
+    private static final int MAX_BATCH = 1024;
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Constructs a new instance using a shared daemon scheduler thread.
+     */
+    public UniqueIdPublisher() {
+        this(UniqueIdBatchSupplier.defaultScheduler());
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param scheduler the scheduler to emit the rest of the demand in the next second
+     * @throws IllegalArgumentException if scheduler is null
+     */
+    public UniqueIdPublisher(final ScheduledExecutorService scheduler) {
+        if (scheduler == null) {
+            throw new IllegalArgumentException("Argument should not be null!");
+        }
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super UniqueId> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException();
+        }
+        Subscription subscription = new Subscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * The subscription emitting ids in a serialized drain loop.
+     */
+    private final class Subscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super UniqueId> subscriber;
+
+        private final AtomicLong requested = new AtomicLong(0);
+
+        private final AtomicInteger wip = new AtomicInteger(0);
+
+        // an invalid request, signalled by the drain loop so onError never runs concurrently with onNext
+        private final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+        private volatile boolean cancelled;
+
+        Subscription(final Flow.Subscriber<? super UniqueId> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                error.compareAndSet(null, new IllegalArgumentException("The request must be positive: " + n));
+                drain();
+                return;
+            }
+            long current;
+            long next;
+            do {
+                current = requested.get();
+                if (current == Long.MAX_VALUE) {
+                    return;
+                }
+                next = current + n;
+                if (next < 0) {
+                    next = Long.MAX_VALUE;
+                }
+            } while (!requested.compareAndSet(current, next));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public void run() {
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            UniqueId[] batch = null;
+            for (;;) {
+                if (isTerminated()) {
+                    return;
+                }
+                long demand = requested.get();
+                long emitted = 0;
+                while (emitted != demand) {
+                    if (isTerminated()) {
+                        return;
+                    }
+                    int size = (int) Math.min(demand - emitted, MAX_BATCH);
+                    if (batch == null || batch.length < size) {
+                        batch = new UniqueId[size];
+                    }
+                    int generated;
+                    try {
+                        generated = UniqueId.nextBatch(batch, 0, size);
+                    } catch (Throwable t) {
+                        cancelled = true;
+                        subscriber.onError(t);
+                        return;
+                    }
+                    for (int i = 0; i < generated; i++) {
+                        if (isTerminated()) {
+                            return;
+                        }
+                        try {
+                            subscriber.onNext(batch[i]);
+                        } catch (Throwable t) {
+                            // a subscriber must not throw, it is cancelled as the drain loop could not go on
+                            cancelled = true;
+                            subscriber.onError(t);
+                            return;
+                        }
+                        batch[i] = null;
+                    }
+                    emitted += generated;
+                    if (generated < size) {
+                        // counters of this second are used up
+                        produced(emitted);
+                        wip.set(0);
+                        scheduler.schedule(this, UniqueIdBatchSupplier.delayToNextSecond(), TimeUnit.MILLISECONDS);
+                        return;
+                    }
+                }
+                produced(emitted);
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private boolean isTerminated() {
+            if (cancelled) {
+                return true;
+            }
+            Throwable t = error.get();
+            if (t != null) {
+                cancelled = true;
+                subscriber.onError(t);
+                return true;
+            }
+            return false;
+        }
+
+        private void produced(final long emitted) {
+            if (requested.get() != Long.MAX_VALUE) {
+                requested.addAndGet(-emitted);
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintx.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * @author bluecreator(qiang.x.wang@gmail.com)
+ *
+ */
+public class MilliUniqueIdTest {
+    public int count = 1000000;
+    public int threads = 4;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testSingleThread() {
+        long begin = System.currentTimeMillis();
+        MilliUniqueId last = MilliUniqueId.get();
+        String lastString = last.toSortableBase64String();
+        for (int i = 0; i < count; i++) {
+            MilliUniqueId id = MilliUniqueId.get();
+            Assert.assertTrue("Not strictly increasing:" + id, id.compareTo(last) > 0);
+            // a new millisecond starts at the offset, or at 0 when the counter overflow carried into it
+            Assert.assertTrue(id.getTimestamp() == last.getTimestamp() || id.getCounter() == MilliUniqueId.COUNTER_OFFSET || id.getCounter() == 0);
+            String sortable = id.toSortableBase64String();
+            Assert.assertTrue(sortable.compareTo(lastString) > 0);
+            Assert.assertTrue(22 == id.toBase64String().length() && 32 == id.toHexString().length());
+            Assert.assertTrue(id.equals(MilliUniqueId.fromBase64String(id.toBase64String())));
+            Assert.assertTrue(id.equals(MilliUniqueId.fromSortableBase64String(sortable)));
+            Assert.assertTrue(id.equals(MilliUniqueId.fromHexString(id.toHexString())));
+            Assert.assertTrue(id.equals(MilliUniqueId.fromByteArray(id.toByteArray())));
+            Assert.assertTrue(id.hashCode() == MilliUniqueId.fromByteArray(id.toByteArray()).hashCode());
+            last = id;
+            lastString = sortable;
+        }
+        long end = System.currentTimeMillis();
+        Assert.assertTrue(last.getMachineIdentifier() == UniqueId.getGeneratedMachineIdentifier());
+        Assert.assertTrue(last.getProcessIdentifier() == UniqueId.getGeneratedProcessIdentifier());
+        // the counter overflow borrows at most a few milliseconds in advance, at least 32768 ids each
+        Assert.assertTrue(last.getTimestamp() >= begin && last.getTimestamp() <= System.currentTimeMillis() + count / 32768 + 1);
+        Assert.assertTrue(last.getInstant().toEpochMilli() == last.getTimestamp());
+        System.out.println("MilliUniqueId generation QPS:" + count * 1000L / Math.max(1L, end - begin));
+    }
+
+    @Test
+    public void testMultiThread() throws InterruptedException {
+        List<Set<MilliUniqueId>> list = new ArrayList<Set<MilliUniqueId>>();
+        List<Thread> generators = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            Set<MilliUniqueId> set = new HashSet<MilliUniqueId>(count);
+            list.add(set);
+            Thread t = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < count; j++) {
+                        set.add(MilliUniqueId.get());
+                    }
+                }
+
+            });
+            generators.add(t);
+            t.start();
+        }
+        Set<MilliUniqueId> totalSet = new HashSet<MilliUniqueId>(threads * count);
+        for (int i = 0; i < threads; i++) {
+            generators.get(i).join();
+            totalSet.addAll(list.get(i));
+        }
+        Assert.assertTrue("Duplicated key found", totalSet.size() == threads * count);
+    }
+
+    @Test
+    public void testLayout() {
+        MilliUniqueId milli = MilliUniqueId.get();
+        UniqueId second = UniqueId.get();
+        Assert.assertTrue(UniqueIdLayout.MILLISECOND == UniqueIdLayout.of(milli.toBase64String()));
+        Assert.assertTrue(UniqueIdLayout.MILLISECOND == UniqueIdLayout.of(milli.toHexString()));
+        Assert.assertTrue(UniqueIdLayout.MILLISECOND == UniqueIdLayout.of(milli.toByteArray()));
+        Assert.assertTrue(UniqueIdLayout.SECOND == UniqueIdLayout.of(second.toBase64String()));
+        Assert.assertTrue(UniqueIdLayout.SECOND == UniqueIdLayout.of(second.toHexString()));
+        Assert.assertTrue(UniqueIdLayout.SECOND == UniqueIdLayout.of(second.toByteArray()));
+        Assert.assertNull(UniqueIdLayout.of(UUID.randomUUID().toString()));
+        Assert.assertNull(UniqueIdLayout.of(new byte[16]));
+        Assert.assertFalse(MilliUniqueId.isValid(second.toBase64String()));
+        Assert.assertFalse(UniqueId.isValid(milli.toBase64String()));
+        for (UniqueIdLayout layout : UniqueIdLayout.values()) {
+            Assert.assertTrue(layout.getBase64Length() == (layout.getByteLength() * 8 + 5) / 6);
+            Assert.assertTrue(layout.getHexLength() == layout.getByteLength() * 2);
+        }
+    }
+
+    @Test
+    public void testParse() {
+        MilliUniqueId milli = MilliUniqueId.get();
+        UniqueId second = UniqueId.get();
+        Assert.assertTrue(milli.equals(UniqueIdLayout.parse(milli.toBase64String())));
+        Assert.assertTrue(milli.equals(UniqueIdLayout.parse(milli.toHexString())));
+        Assert.assertTrue(milli.equals(UniqueIdLayout.parse(milli.toByteArray())));
+        Assert.assertTrue(second.equals(UniqueIdLayout.parse(second.toBase64String())));
+        Assert.assertTrue(second.equals(UniqueIdLayout.parse(second.toHexString().toUpperCase())));
+        Assert.assertTrue(second.equals(UniqueIdLayout.parse(second.toByteArray())));
+        // the common view of both layouts
+        UniqueIdentifier parsed = UniqueIdLayout.parse(milli.toHexString());
+        Assert.assertTrue(UniqueIdLayout.MILLISECOND == parsed.getLayout());
+        Assert.assertTrue(milli.getInstant().equals(parsed.getInstant()) && milli.getCounter() == parsed.getCounter());
+        Assert.assertTrue(milli.toSortableBase64String().equals(parsed.toSortableBase64String()));
+        parsed = UniqueIdLayout.parse(second.toBase64String());
+        Assert.assertTrue(UniqueIdLayout.SECOND == parsed.getLayout());
+        Assert.assertTrue(parsed.getLayout().getByteLength() == parsed.toByteArray().length);
+        Assert.assertTrue(second.getMachineIdentifier() == parsed.getMachineIdentifier());
+        // only raw id bytes are detected: the UUID bytes of an id of 1987 to 2004 look like a MilliUniqueId
+        UniqueId old = UniqueId.fromFields(0x20000000, 1L, (short) 2, 3);
+        Assert.assertTrue(UniqueIdLayout.MILLISECOND == UniqueIdLayout.of(old.toUUIDByteArray()));
+        Assert.assertFalse(old.equals(UniqueIdLayout.parse(old.toUUIDByteArray())));
+        Assert.assertTrue(old.equals(UniqueId.fromUUIDByteArray(old.toUUIDByteArray())));
+    }
+
+    @Test
+    public void testException1() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Unsupported layout version:0");
+        MilliUniqueId.fromByteArray(new byte[16]);
+    }
+
+    @Test
+    public void testException2() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("invalid base64 representation of a MilliUniqueId");
+        MilliUniqueId.fromBase64String(UniqueId.getString());
+    }
+
+    @Test
+    public void testException3() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("invalid base64 character");
+        // the unused low bits of the last character must be zero
+        String base64 = MilliUniqueId.getString();
+        MilliUniqueId.fromBase64String(base64.substring(0, 21) + "B");
+    }
+
+    @Test
+    public void testException4() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Argument need 16 bytes");
+        MilliUniqueId.fromByteArray(new byte[15]);
+    }
+
+    @Test
+    public void testException5() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Invalid id: [0123456789abcdef], it is not an id of any layout.");
+        UniqueIdLayout.parse("0123456789abcdef");
+    }
+
+    @Test
+    public void testException6() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Invalid id: 16 bytes, it is not an id of any layout.");
+        UniqueIdLayout.parse(new byte[16]);
+    }
+}
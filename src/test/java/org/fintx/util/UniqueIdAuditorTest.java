@@ -0,0 +1,184 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintx.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author bluecreator(qiang.x.wang@gmail.com)
+ *
+ */
+public class UniqueIdAuditorTest {
+    public int count = 1000000;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    /**
+     * The log of a generator: ids per second, counters from the given one.
+     */
+    private static String log(final int timestamp, final int seconds, final int perSecond, final long machine, final int pid, int counter) {
+        StringBuilder sb = new StringBuilder();
+        for (int s = 0; s < seconds; s++) {
+            for (int i = 0; i < perSecond; i++) {
+                sb.append(UniqueId.fromFields(timestamp + s, machine, (short) pid, counter++)).append(" some message\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Map<String, UniqueIdAuditor.Source> sources(final String... logs) {
+        Map<String, UniqueIdAuditor.Source> sources = new LinkedHashMap<String, UniqueIdAuditor.Source>();
+        for (int i = 0; i < logs.length; i++) {
+            final String log = logs[i];
+            sources.put("node" + i, () -> new StringReader(log));
+        }
+        return sources;
+    }
+
+    @Test
+    public void testClean() throws IOException, InterruptedException {
+        int timestamp = (int) (System.currentTimeMillis() / 1000);
+        int seconds = 100;
+        int perSecond = count / seconds / 4;
+        Map<String, UniqueIdAuditor.Source> sources = sources(log(timestamp, seconds, perSecond, 0x0000a1b2c3d4e5f0L, 1, 0),
+                log(timestamp, seconds, perSecond, 0x0000a1b2c3d4e5f0L, 2, 0), log(timestamp, seconds, perSecond, 0x0000a1b2c3d4e5f1L, 1, 0),
+                log(timestamp, seconds, perSecond, 0x0000a1b2c3d4e5f1L, 2, 0) + "not an id\n\n");
+        long begin = System.currentTimeMillis();
+        UniqueIdAuditor.Report report = new UniqueIdAuditor(2, 10, null).audit(sources);
+        long end = System.currentTimeMillis();
+        System.out.println("Audit QPS:" + count * 1000L / Math.max(1L, end - begin) + " " + report);
+        Assert.assertTrue(report.isClean());
+        Assert.assertTrue(count == report.getIdCount());
+        Assert.assertTrue(1 == report.getInvalidLines());
+        Assert.assertTrue(0 == report.getLateIds());
+    }
+
+    @Test
+    public void testCollision() throws IOException, InterruptedException {
+        int timestamp = (int) (System.currentTimeMillis() / 1000);
+        // the same identity, disjoint counters in the first seconds, overlapping counters wrapping around in the last second
+        Map<String, UniqueIdAuditor.Source> sources = sources(
+                log(timestamp, 3, 100, 0x0000a1b2c3d4e5f0L, 7, 1000) + log(timestamp + 3, 1, 100, 0x0000a1b2c3d4e5f0L, 7, 0xffffd0),
+                log(timestamp, 3, 100, 0x0000a1b2c3d4e5f0L, 7, 5000) + log(timestamp + 3, 1, 100, 0x0000a1b2c3d4e5f0L, 7, 0x000010),
+                log(timestamp, 4, 100, 0x0000a1b2c3d4e5f0L, 8, 1000));
+        UniqueIdRegistry registry = new UniqueIdRegistry(registryFile());
+        Assert.assertTrue(registry.register(0x0000a1b2c3d4e5f0L, 7, "order-service-1"));
+        UniqueIdAuditor.Report report = new UniqueIdAuditor(1, 2, registry).audit(sources);
+        System.out.println(report);
+        Assert.assertTrue(!report.isClean());
+        Assert.assertTrue(4 == report.getCollisionCount());
+        Assert.assertTrue(2 == report.getCollisions().size());
+        UniqueIdAuditor.Collision collision = report.getCollisions().get(0);
+        Assert.assertTrue(!collision.isOverlapping());
+        Assert.assertTrue(7 == collision.getProcessIdentifier());
+        Assert.assertTrue("order-service-1".equals(collision.getOwner()));
+        Assert.assertTrue(2 == collision.getRanges().size());
+        Assert.assertTrue("node0".equals(collision.getRanges().get(0).getSource()));
+        Assert.assertTrue(100 == collision.getRanges().get(0).getCount());
+
+        report = new UniqueIdAuditor(1, 10, null).audit(sources);
+        collision = report.getCollisions().get(3);
+        Assert.assertTrue(collision.isOverlapping());
+        Assert.assertTrue(timestamp + 3 == collision.getTimestamp());
+        Assert.assertTrue(0xffffd0 == collision.getRanges().get(0).getFirst());
+        Assert.assertTrue(0x000033 == collision.getRanges().get(0).getLast());
+    }
+
+    @Test
+    public void testParallelism() throws IOException, InterruptedException {
+        int timestamp = (int) (System.currentTimeMillis() / 1000);
+        // the sources are read one after another, the first one is kept until the last one starts
+        Map<String, UniqueIdAuditor.Source> sources = sources(log(timestamp, 10, 100, 0x0000a1b2c3d4e5f0L, 7, 0),
+                log(timestamp, 10, 100, 0x0000a1b2c3d4e5f0L, 8, 0), log(timestamp, 10, 100, 0x0000a1b2c3d4e5f0L, 7, 50));
+        UniqueIdAuditor.Report report = new UniqueIdAuditor(1, 100, null, 1).audit(sources);
+        Assert.assertTrue(3000 == report.getIdCount());
+        Assert.assertTrue(0 == report.getLateIds());
+        Assert.assertTrue(10 == report.getCollisionCount());
+        Assert.assertTrue(report.getCollisions().get(0).isOverlapping());
+        Assert.assertTrue("node2".equals(report.getCollisions().get(0).getRanges().get(1).getSource()));
+    }
+
+    @Test
+    public void testFiles() throws IOException, InterruptedException {
+        int timestamp = (int) (System.currentTimeMillis() / 1000);
+        Path log1 = Files.createTempFile("UniqueIdAuditor", ".log");
+        Path log2 = Files.createTempFile("UniqueIdAuditor", ".log");
+        log1.toFile().deleteOnExit();
+        log2.toFile().deleteOnExit();
+        try (BufferedWriter writer = Files.newBufferedWriter(log1, StandardCharsets.UTF_8)) {
+            writer.write(log(timestamp, 10, 1000, 0x0000a1b2c3d4e5f0L, 7, 0));
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(log2, StandardCharsets.UTF_8)) {
+            // hexadecimal ids of the same identity
+            for (int i = 0; i < 1000; i++) {
+                writer.write(UniqueId.fromFields(timestamp + 5, 0x0000a1b2c3d4e5f0L, (short) 7, 5500 + i).toHexString() + "\n");
+            }
+        }
+        UniqueIdAuditor.Report report = new UniqueIdAuditor().audit(log1, log2);
+        Assert.assertTrue(1 == report.getCollisionCount());
+        Assert.assertTrue(report.getCollisions().get(0).isOverlapping());
+        Assert.assertTrue(log2.toString().equals(report.getCollisions().get(0).getRanges().get(1).getSource()));
+    }
+
+    @Test
+    public void testRegistry() throws IOException {
+        Path file = registryFile();
+        UniqueIdRegistry registry = new UniqueIdRegistry(file);
+        Assert.assertTrue(registry.getOwners().isEmpty());
+        Assert.assertTrue(registry.registerCurrentProcess("node1"));
+        Assert.assertTrue(registry.registerCurrentProcess("node1"));
+        Assert.assertTrue(!registry.registerCurrentProcess("node2"));
+        Assert.assertTrue(registry.register(0x0000a1b2c3d4e5f0L, 0xffff, "node2"));
+        Assert.assertTrue("node1".equals(registry.getOwner(UniqueId.getGeneratedMachineIdentifier(), UniqueId.getGeneratedProcessIdentifier())));
+        Assert.assertTrue("node2".equals(new UniqueIdRegistry(file).getOwners().get("a1b2c3d4e5f0:65535")));
+        Assert.assertTrue(2 == registry.getOwners().size());
+    }
+
+    @Test
+    public void testException1() throws IOException {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("The owner must not be empty or contain white space.");
+        new UniqueIdRegistry(registryFile()).register(1L, 1, "node 1");
+    }
+
+    @Test
+    public void testException2() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("The parallelism must be positive.");
+        new UniqueIdAuditor(60, 1000, null, 0);
+    }
+
+    private static Path registryFile() throws IOException {
+        File file = File.createTempFile("UniqueIdRegistry", ".txt");
+        file.delete();
+        file.deleteOnExit();
+        return file.toPath();
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintx.util;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author bluecreator(qiang.x.wang@gmail.com)
+ *
+ */
+public class UniqueIdBatchSupplierTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testBatch() throws Exception {
+        UniqueIdBatchSupplier supplier = new UniqueIdBatchSupplier();
+        UniqueId[] ids = supplier.get(100000).get(5, TimeUnit.SECONDS);
+        Set<UniqueId> set = new HashSet<UniqueId>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            Assert.assertTrue(UniqueId.getGeneratedMachineIdentifier() == ids[i].getMachineIdentifier());
+            Assert.assertTrue(UniqueId.getGeneratedProcessIdentifier() == ids[i].getProcessIdentifier());
+            set.add(ids[i]);
+        }
+        Assert.assertTrue("Duplicated key found in batch", set.size() == ids.length);
+        Assert.assertTrue(0 == supplier.get(0).get().length);
+    }
+
+    @Test
+    public void testNextSecond() throws Exception {
+        // more then the counters of one second, the rest is generated in the next second
+        int count = 0x01000000 + 1000;
+        long begin = System.currentTimeMillis() / 1000L;
+        UniqueId[] ids = new UniqueIdBatchSupplier().get(count).get(30, TimeUnit.SECONDS);
+        Assert.assertTrue(ids[count - 1].getTimestamp() > begin);
+        BitSet counters = new BitSet(0x01000000);
+        long timestamp = ids[0].getTimestamp();
+        for (int i = 0; i < count; i++) {
+            if (ids[i].getTimestamp() != timestamp) {
+                Assert.assertTrue(ids[i].getTimestamp() > timestamp);
+                timestamp = ids[i].getTimestamp();
+                counters.clear();
+            }
+            Assert.assertFalse("Duplicated counter found in one second", counters.get(ids[i].getCounter()));
+            counters.set(ids[i].getCounter());
+            ids[i] = null;
+        }
+    }
+
+    @Test
+    public void testCancel() {
+        Assume.assumeTrue(UniqueIdSequencer.Mode.CONTINUOUS == UniqueIdSequencer.mode(System.getProperty(UniqueIdSequencer.MODE_PROPERTY)));
+        final List<Runnable> scheduled = new ArrayList<Runnable>();
+        ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1) {
+
+            @Override
+            public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit) {
+                scheduled.add(command);
+                return null;
+            }
+
+        };
+        // more then the counters of one second, unless the second rolled over while generating the batch at once
+        CompletableFuture<UniqueId[]> future = null;
+        for (int i = 0; i < 5 && (future == null || future.isDone()); i++) {
+            future = new UniqueIdBatchSupplier(scheduler).get(0x01000000 + 100000);
+        }
+        Assume.assumeFalse(future.isDone());
+        Assert.assertTrue(1 == scheduled.size());
+        Assert.assertTrue(future.cancel(false));
+        // the rest of the cancelled batch is neither generated nor scheduled again
+        UniqueId before = UniqueId.get();
+        scheduled.remove(0).run();
+        UniqueId after = UniqueId.get();
+        Assert.assertTrue(scheduled.isEmpty());
+        Assert.assertTrue("The rest of a cancelled batch generated", ((after.getCounter() - before.getCounter()) & 0x00ffffff) == 1);
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testException1() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("The count must not be negative.");
+        new UniqueIdBatchSupplier().get(-1);
+    }
+
+    @Test
+    public void testException2() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Argument should not be null!");
+        new UniqueIdBatchSupplier(null);
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintx.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * @author bluecreator(qiang.x.wang@gmail.com)
+ *
+ */
+public class UniqueIdBlockCodecTest {
+    public int count = 1000000;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    /**
+     * Sorted ids of a few processes, a few thousands per second each, with counters wrapping around.
+     */
+    private UniqueId[] sortedIds(final int size) {
+        Random random = new Random(1);
+        UniqueId[] ids = new UniqueId[size];
+        int timestamp = (int) (System.currentTimeMillis() / 1000);
+        int[] counters = new int[] { 0xfffff0, random.nextInt(), random.nextInt(), random.nextInt() };
+        for (int i = 0; i < size;) {
+            for (int p = 0; p < counters.length && i < size; p++) {
+                for (int n = 1000 + random.nextInt(3000); n > 0 && i < size; n--) {
+                    ids[i++] = UniqueId.fromFields(timestamp, 0x0000a1b2c3d4e5f0L + p / 2, (short) (1000 * p), counters[p]++);
+                }
+            }
+            timestamp++;
+        }
+        // the wrapped counters are sorted before the others of the second
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    @Test
+    public void testStreaming() throws IOException {
+        UniqueId[] ids = sortedIds(count);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long begin = System.currentTimeMillis();
+        try (UniqueIdBlockCodec.Writer writer = new UniqueIdBlockCodec.Writer(bytes)) {
+            for (UniqueId id : ids) {
+                writer.write(id);
+            }
+        }
+        long end = System.currentTimeMillis();
+        System.out.println("Block encoding QPS:" + count * 1000L / Math.max(1L, end - begin) + " bytes per id:" + (double) bytes.size() / count);
+        // raw records take 15 bytes
+        Assert.assertTrue(bytes.size() * 5 < 15 * count);
+
+        begin = System.currentTimeMillis();
+        try (UniqueIdBlockCodec.Reader reader = new UniqueIdBlockCodec.Reader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            for (UniqueId id : ids) {
+                Assert.assertTrue(id.equals(reader.read()));
+            }
+            Assert.assertNull(reader.read());
+            Assert.assertNull(reader.readBlock());
+        }
+        end = System.currentTimeMillis();
+        System.out.println("Block decoding QPS:" + count * 1000L / Math.max(1L, end - begin));
+    }
+
+    @Test
+    public void testRandomAccess() throws IOException {
+        UniqueId[] ids = sortedIds(100000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        UniqueIdBlockCodec.Writer writer = new UniqueIdBlockCodec.Writer(bytes, 1000);
+        for (int i = 0; i < ids.length; i++) {
+            writer.write(ids[i]);
+            if (i == 1500) {
+                // a smaller block
+                writer.flush();
+            }
+        }
+        writer.close();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.size() + 3);
+        buffer.put(new byte[3]).put(bytes.toByteArray()).position(3);
+        UniqueIdBlockCodec.Index index = new UniqueIdBlockCodec.Index(buffer);
+        Assert.assertTrue(3 == buffer.position());
+        Assert.assertTrue(101 == index.getBlockCount());
+        Assert.assertTrue(ids.length == index.getIdCount());
+        Assert.assertTrue(ids[1501].equals(index.getFirstId(2)));
+        Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(ids, 1501, 2501), index.getBlock(2)));
+        Random random = new Random();
+        for (int i = 0; i < 1000; i++) {
+            int j = random.nextInt(ids.length);
+            Assert.assertTrue(ids[j].equals(index.get(j)));
+            int block = index.findBlock(ids[j]);
+            Assert.assertTrue(Arrays.asList(index.getBlock(block)).contains(ids[j]));
+        }
+        Assert.assertTrue(-1 == index.findBlock(UniqueId.minForTime(Instant.EPOCH)));
+
+        byte[] block = UniqueIdBlockCodec.encodeBlock(ids, 10, 20);
+        Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(ids, 10, 30), UniqueIdBlockCodec.decodeBlock(block)));
+    }
+
+    @Test
+    public void testUnsorted() {
+        UniqueId[] ids = new UniqueId[1000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = UniqueId.get();
+        }
+        Collections.shuffle(Arrays.asList(ids));
+        ids[0] = UniqueId.maxForTime(Instant.ofEpochSecond(0xffffffffL));
+        ids[1] = UniqueId.minForTime(Instant.EPOCH);
+        Assert.assertTrue(Arrays.equals(ids, UniqueIdBlockCodec.decodeBlock(UniqueIdBlockCodec.encodeBlock(ids, 0, ids.length))));
+    }
+
+    @Test
+    public void testException1() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Malformed block: 2 bytes left after the last id.");
+        UniqueId id = UniqueId.get();
+        UniqueId next = UniqueId.fromFields((int) id.getTimestamp(), id.getMachineIdentifier(), (short) id.getProcessIdentifier(), id.getCounter() + 1);
+        byte[] block = UniqueIdBlockCodec.encodeBlock(new UniqueId[] { id, next }, 0, 2);
+        // claim one id only
+        block[7] = 1;
+        UniqueIdBlockCodec.decodeBlock(block);
+    }
+
+    @Test
+    public void testException2() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Malformed block: truncated payload at 8.");
+        byte[] block = UniqueIdBlockCodec.encodeBlock(new UniqueId[] { UniqueId.get() }, 0, 1);
+        UniqueIdBlockCodec.decodeBlock(Arrays.copyOf(block, block.length - 1));
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintx.util;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author bluecreator(qiang.x.wang@gmail.com)
+ *
+ */
+public class UniqueIdBloomFilterTest {
+    public int count = 1000000;
+    public int threads = 4;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private static UniqueId[] ids(final int size) {
+        UniqueId[] ids = new UniqueId[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = UniqueId.get();
+        }
+        return ids;
+    }
+
+    @Test
+    public void testFalsePositiveRate() throws InterruptedException {
+        UniqueIdBloomFilter filter = new UniqueIdBloomFilter(count, 0.01);
+        UniqueId[] ids = ids(count);
+        List<Thread> list = new ArrayList<Thread>();
+        long begin = System.currentTimeMillis();
+        for (int i = 0; i < threads; i++) {
+            final int first = i;
+            Thread t = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int j = first; j < ids.length; j += threads) {
+                        filter.put(ids[j]);
+                    }
+                }
+
+            });
+            list.add(t);
+            t.start();
+        }
+        for (Thread t : list) {
+            t.join();
+        }
+        long end = System.currentTimeMillis();
+        System.out.println("Bloom filter put QPS:" + count * 1000L / Math.max(1L, end - begin) + " " + filter);
+        for (UniqueId id : ids) {
+            Assert.assertTrue(filter.mightContain(id));
+        }
+        int falsePositives = 0;
+        for (UniqueId id : ids(count)) {
+            if (filter.mightContain(id)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / count;
+        System.out.println("Bloom filter false positive rate:" + rate + " expected:" + filter.expectedFpp());
+        Assert.assertTrue(filter.expectedFpp() <= 0.01);
+        Assert.assertTrue(Math.abs(rate - filter.expectedFpp()) < 0.002);
+        Assert.assertTrue(Math.abs(filter.currentFpp() - filter.expectedFpp()) < 0.001);
+        Assert.assertTrue(Math.abs(filter.approximateElementCount() - count) < count / 50);
+    }
+
+    @Test
+    public void testSerialization() throws IOException {
+        UniqueIdBloomFilter filter = new UniqueIdBloomFilter(10000, 0.001);
+        UniqueId[] ids = ids(10000);
+        for (UniqueId id : ids) {
+            filter.put(id);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        filter.writeTo(new DataOutputStream(bytes));
+        Assert.assertTrue(filter.getSerializedSize() == bytes.size());
+        UniqueIdBloomFilter copy = UniqueIdBloomFilter.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        for (UniqueId id : ids) {
+            Assert.assertTrue(copy.mightContain(id));
+        }
+        Assert.assertTrue(filter.getBitCount() == copy.getBitCount());
+
+        File file = File.createTempFile("UniqueIdBloomFilter", ".bin");
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, filter.getSerializedSize() + 1);
+            buffer.put((byte) 1);
+            filter.writeTo(buffer);
+            Assert.assertTrue(!buffer.hasRemaining());
+            buffer.position(1);
+            copy = UniqueIdBloomFilter.readFrom(buffer);
+        }
+        for (UniqueId id : ids) {
+            Assert.assertTrue(copy.mightContain(id));
+        }
+        Assert.assertTrue(filter.getBitCount() == copy.getBitCount());
+    }
+
+    @Test
+    public void testJava8Buffer() throws IOException {
+        // the ByteBuffer methods overriding the Buffer ones on Java 9 or later (e.g. position(int)) throw NoSuchMethodError on Java 8
+        List<String> calls = new ArrayList<String>();
+        File dir = new File(UniqueIdBloomFilter.class.getProtectionDomain().getCodeSource().getLocation().getPath(), "org/fintx/util");
+        Assume.assumeTrue(dir.isDirectory());
+        for (File file : dir.listFiles()) {
+            if (file.getName().endsWith(".class")) {
+                for (String call : bufferCalls(file)) {
+                    if (call.matches("java/nio/\\w*Buffer\\.(position|limit|mark|reset|clear|flip|rewind)\\(.*\\)Ljava/nio/\\w*Buffer;")
+                            && !call.startsWith("java/nio/Buffer.")) {
+                        calls.add(file.getName() + ": " + call);
+                    }
+                }
+            }
+        }
+        Assert.assertTrue("Not on Java 8:" + calls, calls.isEmpty());
+    }
+
+    @Test
+    public void testMerge() {
+        UniqueIdBloomFilter filter1 = new UniqueIdBloomFilter(10000, 0.01);
+        UniqueIdBloomFilter filter2 = new UniqueIdBloomFilter(10000, 0.01);
+        UniqueId[] ids1 = ids(5000);
+        UniqueId[] ids2 = ids(5000);
+        for (int i = 0; i < 5000; i++) {
+            filter1.put(ids1[i]);
+            filter2.put(ids2[i]);
+        }
+        filter1.merge(filter2);
+        for (int i = 0; i < 5000; i++) {
+            Assert.assertTrue(filter1.mightContain(ids1[i]));
+            Assert.assertTrue(filter1.mightContain(ids2[i]));
+        }
+        Assert.assertTrue(Math.abs(filter1.approximateElementCount() - 10000) < 200);
+    }
+
+    @Test
+    public void testException1() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("The filters are not of the same size.");
+        new UniqueIdBloomFilter(10000, 0.01).merge(new UniqueIdBloomFilter(10000, 0.001));
+    }
+
+    @Test
+    public void testException2() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("The false positive probability must be between 0 and 1.");
+        new UniqueIdBloomFilter(10000, 1);
+    }
+
+    @Test
+    public void testException3() throws IOException {
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Not a UniqueIdBloomFilter.");
+        UniqueIdBloomFilter.readFrom(new DataInputStream(new ByteArrayInputStream(new byte[28])));
+    }
+
+    /**
+     * Gets the methods of java.nio called by a class file, from its constant pool.
+     *
+     * @param file the class file
+     * @return the methods as class.name(descriptor)
+     */
+    private static List<String> bufferCalls(final File file) throws IOException {
+        List<String> calls = new ArrayList<String>();
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readInt();
+            in.readInt();
+            int count = in.readUnsignedShort();
+            String[] utf8 = new String[count];
+            int[][] refs = new int[count][];
+            int[] tags = new int[count];
+            for (int i = 1; i < count; i++) {
+                tags[i] = in.readUnsignedByte();
+                switch (tags[i]) {
+                case 1:
+                    utf8[i] = in.readUTF();
+                    break;
+                case 3:
+                case 4:
+                    in.readInt();
+                    break;
+                case 5:
+                case 6:
+                    in.readLong();
+                    i++;
+                    break;
+                case 7:
+                case 8:
+                case 16:
+                case 19:
+                case 20:
+                    refs[i] = new int[] { in.readUnsignedShort() };
+                    break;
+                case 15:
+                    in.readUnsignedByte();
+                    in.readUnsignedShort();
+                    break;
+                case 9:
+                case 10:
+                case 11:
+                case 12:
+                case 17:
+                case 18:
+                    refs[i] = new int[] { in.readUnsignedShort(), in.readUnsignedShort() };
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tags[i] + " in " + file);
+                }
+            }
+            for (int i = 1; i < count; i++) {
+                if (tags[i] == 10) {
+                    String owner = utf8[refs[refs[i][0]][0]];
+                    int[] nameAndType = refs[refs[i][1]];
+                    if (owner.startsWith("java/nio/")) {
+                        calls.add(owner + "." + utf8[nameAndType[0]] + utf8[nameAndType[1]]);
+                    }
+                }
+            }
+        }
+        return calls;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,152 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintx.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author bluecreator(qiang.x.wang@gmail.com)
+ *
+ */
+public class UniqueIdCacheTest {
+    public int count = 2000000;
+    public int threads = 4;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testCanonical() {
+        UniqueIdCache cache = new UniqueIdCache(16);
+        UniqueId id = UniqueId.get();
+        UniqueId cached = cache.fromBase64String(new String(id.toBase64String()));
+        Assert.assertTrue(id.equals(cached));
+        Assert.assertSame(cached, cache.fromBase64String(id.toBase64String()));
+        Assert.assertSame(cached, cache.fromHexString(id.toHexString()));
+        Assert.assertSame(cached, cache.fromHexString(id.toHexString()));
+        Assert.assertTrue(2 == cache.size());
+        Assert.assertTrue(2 == cache.getHitCount() && 2 == cache.getMissCount());
+        Assert.assertTrue(0.5 == cache.getHitRate());
+        cache.clear();
+        Assert.assertTrue(0 == cache.size());
+        Assert.assertTrue(id.equals(cache.fromBase64String(id.toBase64String())));
+    }
+
+    @Test
+    public void testEviction() {
+        UniqueIdCache cache = new UniqueIdCache(100);
+        List<String> hot = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            hot.add(UniqueId.getString());
+        }
+        for (int i = 0; i < 10000; i++) {
+            // the hot ids are referenced again before the clock hand passes, so they are never evicted
+            cache.fromBase64String(hot.get(i % hot.size()));
+            cache.fromBase64String(UniqueId.getString());
+            Assert.assertTrue(cache.size() <= 100);
+        }
+        long misses = cache.getMissCount();
+        for (String s : hot) {
+            cache.fromBase64String(s);
+        }
+        Assert.assertTrue("Hot id evicted", misses == cache.getMissCount());
+        Assert.assertTrue(cache.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void testGrow() {
+        // nothing is allocated for the maximum size up front
+        UniqueIdCache large = new UniqueIdCache(1 << 30);
+        UniqueId id = UniqueId.get();
+        Assert.assertTrue(id.equals(large.fromBase64String(id.toBase64String())));
+        Assert.assertTrue(1 == large.size());
+        // the clock grows past the initial capacity, then evicts at the maximum size
+        UniqueIdCache cache = new UniqueIdCache(3000);
+        List<String> strings = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            strings.add(UniqueId.get().toBase64String());
+            cache.fromBase64String(strings.get(i));
+        }
+        Assert.assertTrue(3000 == cache.size());
+        Assert.assertTrue(2000 == cache.getEvictionCount());
+        Assert.assertTrue(cache.fromBase64String(strings.get(4999)) == cache.fromBase64String(strings.get(4999)));
+        cache.clear();
+        Assert.assertTrue(0 == cache.size());
+        cache.fromBase64String(strings.get(0));
+        Assert.assertTrue(1 == cache.size());
+    }
+
+    @Test
+    public void testMultiThread() throws InterruptedException {
+        UniqueIdCache cache = new UniqueIdCache(1000);
+        List<String> strings = new ArrayList<String>();
+        for (int i = 0; i < 2000; i++) {
+            strings.add(UniqueId.getString());
+        }
+        List<Thread> list = new ArrayList<Thread>();
+        long begin = System.currentTimeMillis();
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < count; j++) {
+                        // mostly the first 500 strings, sometimes the others
+                        String s = strings.get(j % 10 == 0 ? j / 10 % strings.size() : j % 500);
+                        Assert.assertTrue(s.equals(cache.fromBase64String(s).toBase64String()));
+                    }
+                }
+
+            });
+            list.add(t);
+            t.start();
+        }
+        for (Thread t : list) {
+            t.join();
+        }
+        long end = System.currentTimeMillis();
+        Assert.assertTrue(cache.size() <= 1000);
+        Assert.assertTrue(cache.getHitCount() + cache.getMissCount() == (long) threads * count);
+        System.out.println("Cached decoding QPS:" + threads * count * 1000L / Math.max(1L, end - begin) + " " + cache);
+    }
+
+    @Test
+    public void testException1() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("The maximum size must be positive.");
+        new UniqueIdCache(0);
+    }
+
+    @Test
+    public void testException2() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Argument should not be null!");
+        new UniqueIdCache(1).fromBase64String(null);
+    }
+
+    @Test
+    public void testException3() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("The maximum size must not be more than 1073741824.");
+        new UniqueIdCache((1 << 30) + 1);
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintx.util;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * The platform dependent hot paths. The unit tests load the baseline classes from target/classes; on JDK 11 or later the failsafe plugin runs
+ * them again against the packaged multi-release jar, which loads the Java 11 versions ({@code mvn verify}).
+ *
+ * <p>
+ * The benchmark is not a test, it only prints and is skipped unless {@value #BENCHMARK_PROPERTY} is set:
+ * {@code mvn test -Dtest=UniqueIdPlatformTest -Dorg.fintx.util.benchmark=true}. Its byte loop reference runs in the same JVM, so compare the
+ * ratios on Java 8 and on Java 11 or later rather than the numbers.
+ * </p>
+ *
+ * @author bluecreator(qiang.x.wang@gmail.com)
+ *
+ */
+public class UniqueIdPlatformTest {
+    static final String BENCHMARK_PROPERTY = "org.fintx.util.benchmark";
+
+    public int count = 1000000;
+    public int rounds = 5;
+
+    @Test
+    public void testImplementation() {
+        String version = System.getProperty("java.specification.version");
+        boolean java11 = !version.startsWith("1.") && Integer.parseInt(version) >= 11;
+        boolean jar = UniqueIdPlatform.class.getProtectionDomain().getCodeSource().getLocation().getPath().endsWith(".jar");
+        // the integration tests run against the jar only
+        Assert.assertTrue(jar == Boolean.getBoolean("org.fintx.util.multiRelease"));
+        // the versions of the multi-release jar are loaded on Java 11 or later
+        Assert.assertTrue(UniqueIdPlatform.getImplementation(), (java11 && jar ? "java11" : "java8").equals(UniqueIdPlatform.getImplementation()));
+        String processName = java.lang.management.ManagementFactory.getRuntimeMXBean().getName();
+        Assert.assertTrue(Long.parseLong(processName.substring(0, processName.indexOf('@'))) == UniqueIdPlatform.processId());
+        Assert.assertTrue((UniqueIdPlatform.processId() & 0xffff) == UniqueId.getGeneratedProcessIdentifier());
+    }
+
+    @Test
+    public void testBytes() {
+        Random random = new Random(42);
+        byte[] bytes = new byte[32];
+        for (int i = 0; i < 100000; i++) {
+            int offset = random.nextInt(bytes.length - 8);
+            long value = random.nextLong();
+            UniqueIdPlatform.putLong(bytes, offset, value);
+            Assert.assertTrue(value == bytesToLong(bytes, offset, 8));
+            Assert.assertTrue(value == UniqueIdPlatform.getLong(bytes, offset));
+            UniqueIdPlatform.putInt(bytes, offset, (int) value);
+            Assert.assertTrue((int) value == (int) bytesToLong(bytes, offset, 4));
+            Assert.assertTrue((int) value == UniqueIdPlatform.getInt(bytes, offset));
+        }
+        UniqueId id = UniqueId.fromFields(0xfedcba98, 0x0000a1b2c3d4e5f6L, (short) 0xff01, 0x00abcdef);
+        Assert.assertTrue("fedcba98a1b2c3d4e5f6ff01abcdef".equals(UniqueIdCodec.toHexString(id.toByteArray())));
+        Assert.assertTrue(id.equals(UniqueId.fromByteArray(id.toByteArray())));
+        Assert.assertTrue(0xff01 == UniqueId.fromByteArray(id.toByteArray()).getProcessIdentifier());
+    }
+
+    @Test
+    public void testBenchmark() throws IOException {
+        Assume.assumeTrue(Boolean.getBoolean(BENCHMARK_PROPERTY));
+        UniqueId[] ids = new UniqueId[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = UniqueId.get();
+        }
+        byte[] buffer = new byte[15 * count];
+        byte[][] arrays = new byte[count][];
+        UniqueId[] read = new UniqueId[count];
+        long baseline = 0;
+        long platform = 0;
+        long serialization = 0;
+        long bulk = 0;
+        for (int r = 0; r < rounds; r++) {
+            // the Java 8 byte loops, as the reference in the same JVM
+            long begin = System.nanoTime();
+            long check = 0;
+            for (int i = 0, offset = 0; i < count; i++, offset += 15) {
+                UniqueId id = ids[i];
+                longToBytes(buffer, offset, 4, id.getTimestamp());
+                longToBytes(buffer, offset + 4, 6, id.getMachineIdentifier());
+                longToBytes(buffer, offset + 10, 2, id.getProcessIdentifier());
+                longToBytes(buffer, offset + 12, 3, id.getCounter());
+            }
+            for (int i = 0, offset = 0; i < count; i++, offset += 15) {
+                check += bytesToLong(buffer, offset, 4) + bytesToLong(buffer, offset + 4, 6) + bytesToLong(buffer, offset + 10, 2)
+                        + bytesToLong(buffer, offset + 12, 3);
+            }
+            baseline = Math.max(baseline, 2L * count * 1000000000L / Math.max(1L, System.nanoTime() - begin));
+
+            begin = System.nanoTime();
+            for (int i = 0, offset = 0; i < count; i++, offset += 15) {
+                UniqueId id = ids[i];
+                UniqueIdPlatform.putInt(buffer, offset, (int) id.getTimestamp());
+                UniqueIdPlatform.putLong(buffer, offset + 4, id.getMachineIdentifier() << 16 | id.getProcessIdentifier());
+                UniqueIdPlatform.putInt(buffer, offset + 11, id.getProcessIdentifier() << 24 | id.getCounter());
+            }
+            for (int i = 0, offset = 0; i < count; i++, offset += 15) {
+                long machineAndProcess = UniqueIdPlatform.getLong(buffer, offset + 4);
+                check -= (UniqueIdPlatform.getInt(buffer, offset) & 0xffffffffL) + (machineAndProcess >>> 16) + (machineAndProcess & 0xffffL)
+                        + (UniqueIdPlatform.getInt(buffer, offset + 11) & 0x00ffffff);
+            }
+            platform = Math.max(platform, 2L * count * 1000000000L / Math.max(1L, System.nanoTime() - begin));
+            Assert.assertTrue(0 == check);
+
+            // the arrays escape, as when they are written out
+            begin = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                arrays[i] = ids[i].toByteArray();
+            }
+            for (int i = 0; i < count; i++) {
+                read[i] = UniqueId.fromByteArray(arrays[i]);
+            }
+            serialization = Math.max(serialization, 2L * count * 1000000000L / Math.max(1L, System.nanoTime() - begin));
+            Assert.assertTrue(ids[count - 1].equals(read[count - 1]));
+
+            begin = System.nanoTime();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(15 * count + 4);
+            UniqueId.writeAll(new DataOutputStream(bytes), ids);
+            read = UniqueId.readAll(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            bulk = Math.max(bulk, 2L * count * 1000000000L / Math.max(1L, System.nanoTime() - begin));
+            Assert.assertTrue(ids[count - 1].equals(read[count - 1]));
+        }
+        String implementation = UniqueIdPlatform.getImplementation() + " on " + System.getProperty("java.version");
+        System.out.println("Byte loops (Java 8 reference) QPS:" + baseline + ", " + implementation + " byte views QPS:" + platform);
+        System.out.println(implementation + " toByteArray/fromByteArray QPS:" + serialization + " writeAll/readAll QPS:" + bulk);
+    }
+
+    private static void longToBytes(final byte[] bytes, final int offset, final int length, final long num) {
+        for (int ix = offset + length - 1, shift = 0; ix >= offset; ix--, shift += 8) {
+            bytes[ix] = (byte) (num >>> shift);
+        }
+    }
+
+    private static long bytesToLong(final byte[] bytes, final int offset, final int length) {
+        long num = 0;
+        for (int ix = offset; ix < offset + length; ++ix) {
+            num <<= 8;
+            num |= (bytes[ix] & 0xff);
+        }
+        return num;
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintx.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author bluecreator(qiang.x.wang@gmail.com)
+ *
+ */
+public class UniqueIdPoolTest {
+    public int count = 500000;
+    public int threads = 4;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testMultiThread() throws InterruptedException {
+        try (UniqueIdPool pool = new UniqueIdPool(4096, 1)) {
+            Assert.assertTrue(4096 == pool.getCapacity());
+            Assert.assertTrue(1 == pool.getMaxLagSeconds());
+            List<Set<UniqueId>> list = new ArrayList<Set<UniqueId>>();
+            List<Thread> consumers = new ArrayList<Thread>();
+            for (int i = 0; i < threads; i++) {
+                Set<UniqueId> set = new HashSet<UniqueId>(count);
+                list.add(set);
+                Thread t = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        for (int j = 0; j < count; j++) {
+                            set.add(pool.poll());
+                        }
+                    }
+
+                });
+                consumers.add(t);
+                t.start();
+            }
+            Set<UniqueId> totalSet = new HashSet<UniqueId>(threads * count);
+            for (int i = 0; i < threads; i++) {
+                consumers.get(i).join();
+                totalSet.addAll(list.get(i));
+            }
+            Assert.assertTrue("Duplicated key found in pooled ids", totalSet.size() == threads * count);
+        }
+    }
+
+    @Test
+    public void testStaleness() throws InterruptedException {
+        try (UniqueIdPool pool = new UniqueIdPool(1024, 0)) {
+            Thread.sleep(100);
+            Assert.assertTrue(pool.size() > 0);
+            // pooled ids are a few seconds old now, they must be discarded or replaced
+            Thread.sleep(2500);
+            for (int i = 0; i < 2048; i++) {
+                long now = System.currentTimeMillis() / 1000L;
+                // allow the refill thread one rollover behind
+                Assert.assertTrue("Stale id", pool.poll().getTimestamp() >= now - 1);
+            }
+        }
+    }
+
+    @Test
+    public void testLowWater() throws InterruptedException {
+        try (UniqueIdPool pool = new UniqueIdPool(1024, 10)) {
+            for (int i = 0; i < 100 && pool.size() < 1024; i++) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(1024 == pool.size());
+            // the refill thread is parked while the pool is more than half full
+            for (int i = 0; i < 511; i++) {
+                pool.poll();
+            }
+            Thread.sleep(100);
+            Assert.assertTrue(513 == pool.size());
+            // taken to half, the refill thread is woken up
+            pool.poll();
+            for (int i = 0; i < 100 && pool.size() < 1024; i++) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(1024 == pool.size());
+        }
+    }
+
+    @Test
+    public void testGeneratorFailure() throws InterruptedException {
+        AtomicInteger failures = new AtomicInteger(3);
+        // e.g. the machine time going back more than a second
+        try (UniqueIdPool pool = new UniqueIdPool(16, 1, () -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new IllegalArgumentException("The timestamp must not be less then the timestamp last time.");
+            }
+            return UniqueId.get();
+        })) {
+            for (int i = 0; i < 100 && pool.size() < 16; i++) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(16 == pool.size());
+            Assert.assertTrue(failures.get() < 0);
+        }
+    }
+
+    @Test
+    public void testPerformance() {
+        try (UniqueIdPool pool = new UniqueIdPool(1 << 16, 1)) {
+            long begin = System.currentTimeMillis();
+            for (int i = 0; i < count; i++) {
+                pool.poll();
+            }
+            long end = System.currentTimeMillis();
+            System.out.println("Pooled ID QPS:" + count * 1000L / Math.max(1L, end - begin));
+        }
+    }
+
+    @Test
+    public void testClosed() {
+        UniqueIdPool pool = new UniqueIdPool(1, 1);
+        Assert.assertTrue(1 == pool.getCapacity());
+        pool.close();
+        Set<UniqueId> set = new HashSet<UniqueId>();
+        for (int i = 0; i < 100; i++) {
+            set.add(pool.poll());
+        }
+        Assert.assertTrue(set.size() == 100);
+    }
+
+    @Test
+    public void testException1() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("The capacity must be between 1 and 1073741824.");
+        new UniqueIdPool(0, 1);
+    }
+
+    @Test
+    public void testException2() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("The max lag seconds must not be negative.");
+        new UniqueIdPool(16, -1);
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintx.util;
+
+import org.fintx.util.UniqueIdSequencer.Mode;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author bluecreator(qiang.x.wang@gmail.com)
+ *
+ */
+public class UniqueIdSequencerTest {
+    public int count = 1000000;
+    public int threads = 4;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testStrictlyIncreasing() throws InterruptedException {
+        final UniqueIdSequencer restart = new UniqueIdSequencer(Mode.RESTART, () -> System.currentTimeMillis() / 1000L, 0);
+        final UniqueId[][] results = new UniqueId[threads][];
+        List<Thread> list = new ArrayList<Thread>();
+        long begin = System.currentTimeMillis();
+        for (int i = 0; i < threads; i++) {
+            final int index = i;
+            Thread t = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    UniqueId[] ids = new UniqueId[count];
+                    for (int j = 0; j < count; j++) {
+                        ids[j] = UniqueId.get(restart);
+                    }
+                    results[index] = ids;
+                }
+
+            });
+            list.add(t);
+            t.start();
+        }
+        for (Thread t : list) {
+            t.join();
+        }
+        long end = System.currentTimeMillis();
+        System.out.println("Restart mode generation QPS:" + threads * count * 1000L / Math.max(1L, end - begin));
+        UniqueId[] all = new UniqueId[threads * count];
+        for (int i = 0; i < threads; i++) {
+            for (int j = 1; j < count; j++) {
+                Assert.assertTrue("Not increasing:" + results[i][j - 1] + " " + results[i][j], results[i][j - 1].compareTo(results[i][j]) < 0);
+            }
+            System.arraycopy(results[i], 0, all, i * count, count);
+        }
+        Arrays.sort(all);
+        for (int i = 1; i < all.length; i++) {
+            Assert.assertTrue("Duplicated:" + all[i], all[i - 1].compareTo(all[i]) < 0);
+            // dense: the next counter of the same second, or the first counter of a later second
+            Assert.assertTrue(all[i].getCounter() == all[i - 1].getCounter() + 1
+                    || all[i].getCounter() == 0 && all[i].getTimestamp() > all[i - 1].getTimestamp());
+        }
+    }
+
+    @Test
+    public void testRollover() {
+        final AtomicLong clock = new AtomicLong(1499999999L);
+        UniqueIdSequencer sequencer = new UniqueIdSequencer(Mode.RESTART, clock::get, 0);
+        clock.set(1500000000L);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue((1500000000L << 24 | i) == sequencer.next());
+        }
+        clock.incrementAndGet();
+        Assert.assertTrue(1500000001L << 24 == sequencer.next());
+        // the machine time goes back, the last second is kept
+        clock.addAndGet(-5);
+        Assert.assertTrue((1500000001L << 24 | 1) == sequencer.next());
+        Assert.assertTrue(1500000001L == sequencer.getCurrentTimestamp() && 1 == sequencer.getCurrentCounter());
+        // the counter runs out, the next second is used in advance
+        clock.set(1500000002L);
+        long state = 0;
+        for (int i = 0; i < 0x01000000 + 5; i++) {
+            state = sequencer.next();
+        }
+        Assert.assertTrue((1500000003L << 24 | 4) == state);
+        clock.set(1500000003L);
+        Assert.assertTrue((1500000003L << 24 | 5) == sequencer.next());
+        clock.set(1500000004L);
+        Assert.assertTrue(1500000004L << 24 == sequencer.next());
+    }
+
+    @Test
+    public void testStartup() {
+        final AtomicLong clock = new AtomicLong(1500000000L);
+        UniqueIdSequencer sequencer = new UniqueIdSequencer(Mode.RESTART, clock::get, 0);
+        // no id in the second the sequencer starts
+        Assert.assertTrue(1500000001L << 24 == sequencer.next());
+        Assert.assertTrue((1500000001L << 24 | 1) == sequencer.next());
+        // a restart with the same identity in the same second does not generate the ids of the previous run
+        UniqueIdSequencer restarted = new UniqueIdSequencer(Mode.RESTART, clock::get, 0);
+        Assert.assertTrue(1500000001L << 24 == restarted.next());
+        UniqueId[] ids = new UniqueId[10];
+        Assert.assertTrue(10 == new UniqueIdSequencer(Mode.RESTART, clock::get, 0).nextBatch(ids, 0, 10, 1L, (short) 2));
+        Assert.assertTrue(1500000001L == ids[0].getTimestamp() && 0 == ids[0].getCounter());
+        clock.incrementAndGet();
+        Assert.assertTrue((1500000001L << 24 | 2) == sequencer.next());
+        clock.incrementAndGet();
+        Assert.assertTrue(1500000002L << 24 == sequencer.next());
+    }
+
+    @Test
+    public void testRound() {
+        final AtomicLong clock = new AtomicLong(0xfffffffeL);
+        UniqueIdSequencer sequencer = new UniqueIdSequencer(Mode.RESTART, clock::get, 0);
+        clock.set(0xffffffffL);
+        Assert.assertTrue(0xffffffffL << 24 == sequencer.next());
+        // the new round of 2^32 seconds
+        clock.set(0x100000000L);
+        Assert.assertTrue(0L == sequencer.next());
+        // the machine time goes back across the end of the round
+        clock.set(0xffffffffL);
+        Assert.assertTrue(1L == sequencer.next());
+        // the counter carries across the end of the round
+        for (int i = 0; i < 0x01000000; i++) {
+            sequencer.next();
+        }
+        clock.set(0x100000001L);
+        Assert.assertTrue((1L << 24 | 2) == sequencer.next());
+        clock.set(0x100000002L);
+        Assert.assertTrue(2L << 24 == sequencer.next());
+    }
+
+    @Test
+    public void testBatch() {
+        final AtomicLong clock = new AtomicLong(1499999999L);
+        UniqueIdSequencer sequencer = new UniqueIdSequencer(Mode.RESTART, clock::get, 0);
+        clock.set(1500000000L);
+        UniqueId[] ids = new UniqueId[100];
+        Assert.assertTrue(100 == sequencer.nextBatch(ids, 0, 100, 1L, (short) 2));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(1500000000L == ids[i].getTimestamp() && i == ids[i].getCounter());
+        }
+        UniqueId next = UniqueId.fromFields((int) (sequencer.next() >>> 24), 1L, (short) 2, 100);
+        Assert.assertTrue(next.getCounter() == 100);
+        clock.incrementAndGet();
+        Assert.assertTrue(50 == sequencer.nextBatch(ids, 0, 50, 1L, (short) 2));
+        Assert.assertTrue(1500000001L == ids[0].getTimestamp() && 0 == ids[0].getCounter());
+        Assert.assertTrue(1500000001L == ids[49].getTimestamp() && 49 == ids[49].getCounter());
+        Assert.assertTrue((1500000001L << 24 | 50) == sequencer.next());
+    }
+
+    @Test
+    public void testContinuous() {
+        final AtomicLong clock = new AtomicLong(1500000000L);
+        UniqueIdSequencer sequencer = new UniqueIdSequencer(Mode.CONTINUOUS, clock::get, 0x00fffffe);
+        Assert.assertTrue((1500000000L << 24 | 0x00fffffe) == sequencer.next());
+        clock.incrementAndGet();
+        Assert.assertTrue((1500000001L << 24 | 0x00ffffff) == sequencer.next());
+        // the counter keeps incrementing across seconds
+        Assert.assertTrue(1500000001L << 24 == sequencer.next());
+        clock.addAndGet(-1);
+        Assert.assertTrue((1500000000L << 24 | 1) == sequencer.next());
+        Assert.assertTrue(Mode.CONTINUOUS == UniqueIdSequencer.mode(null));
+        Assert.assertTrue(Mode.RESTART == UniqueIdSequencer.mode(" Restart "));
+        Assert.assertTrue(Mode.CONTINUOUS == UniqueIdSequencer.system().getMode());
+    }
+
+    @Test
+    public void testPause() {
+        // the clock readings: the constructor, an id, a thread paused after reading the clock, then the same after the clock went back 1 second
+        final long[] readings = { 1500000000L, 1500000005L, 1500000002L, 1500000005L, 1500000002L, 1500000004L };
+        final AtomicLong index = new AtomicLong();
+        UniqueIdSequencer sequencer = new UniqueIdSequencer(Mode.CONTINUOUS, () -> readings[(int) index.getAndIncrement()], 0);
+        Assert.assertTrue(1500000005L << 24 == sequencer.next());
+        // the machine time read again did not go back
+        Assert.assertTrue((1500000005L << 24 | 1) == sequencer.next());
+        // the machine time read again went back one second, tolerated as without the pause
+        Assert.assertTrue((1500000004L << 24 | 2) == sequencer.next());
+        Assert.assertTrue(readings.length == index.get());
+    }
+
+    @Test
+    public void testRegister() throws IOException {
+        File file = File.createTempFile("UniqueIdRegistry", ".txt");
+        file.delete();
+        file.deleteOnExit();
+        UniqueIdSequencer.register(Mode.RESTART, file.getPath(), "node1", 0x0000a1b2c3d4e5f0L, 7);
+        // the same owner restarted
+        UniqueIdSequencer.register(Mode.RESTART, file.getPath(), "node1", 0x0000a1b2c3d4e5f0L, 7);
+        UniqueIdSequencer.register(Mode.RESTART, file.getPath(), "node2", 0x0000a1b2c3d4e5f0L, 8);
+        // the random initial counter, or no registry
+        UniqueIdSequencer.register(Mode.CONTINUOUS, file.getPath(), "node2", 0x0000a1b2c3d4e5f0L, 7);
+        UniqueIdSequencer.register(Mode.RESTART, null, null, 0x0000a1b2c3d4e5f0L, 7);
+        Assert.assertTrue("node1".equals(new UniqueIdRegistry(file.toPath()).getOwner(0x0000a1b2c3d4e5f0L, 7)));
+        Assert.assertTrue(2 == new UniqueIdRegistry(file.toPath()).getOwners().size());
+    }
+
+    @Test
+    public void testException4() throws IOException {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("The identity a1b2c3d4e5f0:7 is registered by another owner then node2, the restart mode would generate duplicated ids.");
+        File file = File.createTempFile("UniqueIdRegistry", ".txt");
+        file.delete();
+        file.deleteOnExit();
+        UniqueIdSequencer.register(Mode.RESTART, file.getPath(), "node1", 0x0000a1b2c3d4e5f0L, 7);
+        UniqueIdSequencer.register(Mode.RESTART, file.getPath(), "node2", 0x0000a1b2c3d4e5f0L, 7);
+    }
+
+    @Test
+    public void testException5() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("The org.fintx.util.UniqueId.owner must be set with the org.fintx.util.UniqueId.registry.");
+        UniqueIdSequencer.register(Mode.RESTART, "registry.txt", " ", 0x0000a1b2c3d4e5f0L, 7);
+    }
+
+    @Test
+    public void testException3() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("The timestamp must not be less then the timestamp last time.");
+        // the machine time read again after the pause went back 2 seconds
+        final long[] readings = { 1500000000L, 1500000005L, 1500000002L, 1500000003L };
+        final AtomicLong index = new AtomicLong();
+        UniqueIdSequencer sequencer = new UniqueIdSequencer(Mode.CONTINUOUS, () -> readings[(int) index.getAndIncrement()], 0);
+        sequencer.next();
+        sequencer.next();
+    }
+
+    @Test
+    public void testException1() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("The timestamp must not be less then the timestamp last time.");
+        final AtomicLong clock = new AtomicLong(1500000000L);
+        UniqueIdSequencer sequencer = new UniqueIdSequencer(Mode.CONTINUOUS, clock::get, 0);
+        sequencer.next();
+        clock.addAndGet(-2);
+        sequencer.next();
+    }
+
+    @Test
+    public void testException2() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Invalid org.fintx.util.UniqueId.counter: [random], it must be continuous or restart.");
+        UniqueIdSequencer.mode("random");
+    }
+}
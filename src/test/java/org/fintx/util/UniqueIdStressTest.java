@@ -0,0 +1,284 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintx.util;
+
+import org.fintx.util.UniqueIdSequencer.Mode;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The uniqueness of the ids generated by many threads while the clock jumps forward, goes back a second, goes back an hour and crosses the end of
+ * the round of 2^32 seconds.
+ *
+ * <p>
+ * The run is sized by the system properties, e.g. a few billion ids:
+ * {@code mvn test -Dtest=UniqueIdStressTest -Dorg.fintx.util.stress.ids=4000000000 -Dorg.fintx.util.stress.threads=32}.
+ * </p>
+ *
+ * @author bluecreator(qiang.x.wang@gmail.com)
+ *
+ */
+public class UniqueIdStressTest {
+    public long count = Long.getLong("org.fintx.util.stress.ids", 32000000L);
+    public int perSecond = Integer.getInteger("org.fintx.util.stress.perSecond", 1000000);
+    public int threads = Integer.getInteger("org.fintx.util.stress.threads", Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+    public long timeoutSeconds = Long.getLong("org.fintx.util.stress.timeoutSeconds", 600L);
+
+    @Test
+    public void testRestart() throws InterruptedException {
+        Harness harness = new Harness(Mode.RESTART, count, perSecond, threads, timeoutSeconds);
+        harness.run();
+        Assert.assertTrue(harness.toString(), 0 == harness.rejected.sum());
+        Assert.assertTrue(harness.toString(), harness.total == harness.generated.sum());
+    }
+
+    @Test
+    public void testContinuous() throws InterruptedException {
+        Harness harness = new Harness(Mode.CONTINUOUS, count, perSecond, threads, timeoutSeconds);
+        harness.run();
+        // the ids of the phase the clock went back an hour are rejected, give or take the batches generating when the clock jumped
+        Assert.assertTrue(harness.toString(), Math.abs(harness.rejected.sum() - harness.perSecond) <= (long) harness.threads * Harness.BATCH);
+        Assert.assertTrue(harness.toString(), harness.total == harness.generated.sum() + harness.rejected.sum());
+    }
+
+    /**
+     * The threads take batches of ids from a ticket counter, each phase of the schedule is perSecond tickets. The thread generating across the start
+     * of a phase sets the clock of the phase in the middle of its batch, while the other threads are still generating the batches of the last
+     * phase, so the clock jumps forward, goes back a second and goes back an hour between the clock reads and the compare and sets of the
+     * sequencer. The ids are checked in a bitmap of 2^24 bits per second. A batch reads the clocks of its phase and later ones only, so the bitmaps
+     * of the seconds before the rest of the schedule of the oldest phase generating are dropped.
+     */
+    private static class Harness {
+        private static final int BATCH = 1000;
+        private static final long HOUR = 3600L;
+        private static final int IDLE = Integer.MAX_VALUE;
+
+        private final Mode mode;
+        private final int perSecond;
+        private final long total;
+        private final int threads;
+        private final long timeoutSeconds;
+        private final long[] schedule;
+        private final long[] scheduleMin;
+
+        private volatile long clock;
+        private volatile int clockPhase;
+        private final AtomicLong issued = new AtomicLong();
+        // the phase of the batch of every thread, IDLE if none
+        private final AtomicIntegerArray active;
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        private final Map<Long, AtomicLongArray> bitmaps = new ConcurrentHashMap<Long, AtomicLongArray>();
+        private final Set<Long> dropped = ConcurrentHashMap.newKeySet();
+        private final LongAdder generated = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder duplicates = new LongAdder();
+        private final LongAdder late = new LongAdder();
+        private final AtomicReference<String> firstDuplicate = new AtomicReference<String>();
+        private final AtomicInteger maxBitmaps = new AtomicInteger();
+        private long elapsed;
+
+        Harness(final Mode mode, final long count, final int perSecond, final int threads, final long timeoutSeconds) {
+            this.mode = mode;
+            // the continuous counter is shared by the seconds, a second visited again after the clock went back a second spans the counters of
+            // three phases (and the batches overlapping them), which must not wrap around onto the first ones
+            this.perSecond = Math.max(BATCH, (mode == Mode.CONTINUOUS ? Math.min(perSecond, 0x00500000) : perSecond) / BATCH * BATCH);
+            int seconds = (int) Math.max(16L, Math.min(count / this.perSecond, Integer.MAX_VALUE / 2));
+            this.total = (long) seconds * this.perSecond;
+            this.threads = threads;
+            this.timeoutSeconds = timeoutSeconds;
+            this.active = new AtomicIntegerArray(threads);
+            this.schedule = new long[seconds];
+            this.scheduleMin = new long[seconds];
+            // the end of the round of 2^32 seconds is in the middle, between two seconds of no other events
+            final int round = seconds / 16 * 8 + 4;
+            long base = 0x100000000L - round - 100;
+            for (int i = 0; i < seconds; i++, base++) {
+                if (i == 6) {
+                    base += 100;
+                }
+                if (i == 3) {
+                    schedule[i] = base - HOUR;
+                } else if (i % 8 == 7 || i == round + 1) {
+                    // a second before the last one
+                    schedule[i] = base - 2;
+                } else {
+                    schedule[i] = base;
+                }
+            }
+            scheduleMin[seconds - 1] = schedule[seconds - 1];
+            for (int i = seconds - 2; i >= 0; i--) {
+                scheduleMin[i] = Math.min(schedule[i], scheduleMin[i + 1]);
+            }
+        }
+
+        void run() throws InterruptedException {
+            clock = schedule[0];
+            final UniqueIdSequencer sequencer = new UniqueIdSequencer(mode, () -> clock, 0x00fff000);
+            List<Thread> list = new ArrayList<Thread>();
+            long begin = System.currentTimeMillis();
+            for (int i = 0; i < threads; i++) {
+                final int worker = i;
+                active.set(worker, IDLE);
+                Thread t = new Thread(() -> {
+                    try {
+                        generate(sequencer, worker);
+                    } catch (Throwable e) {
+                        // the other threads stop waiting for the clock
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        active.set(worker, IDLE);
+                    }
+                });
+                t.setDaemon(true);
+                list.add(t);
+                t.start();
+            }
+            long deadline = begin + timeoutSeconds * 1000L;
+            for (Thread t : list) {
+                t.join(Math.max(1L, deadline - System.currentTimeMillis()));
+                if (t.isAlive()) {
+                    failure.compareAndSet(null, new AssertionError("Timed out after " + timeoutSeconds + " seconds"));
+                    break;
+                }
+            }
+            elapsed = Math.max(1L, System.currentTimeMillis() - begin);
+            System.out.println("Stress " + this);
+            if (failure.get() != null) {
+                throw new AssertionError(this.toString(), failure.get());
+            }
+            Assert.assertTrue(this.toString(), null == firstDuplicate.get());
+            Assert.assertTrue(this.toString(), 0 == late.sum());
+        }
+
+        private int phase(final long position) {
+            return (int) ((position + BATCH / 2) / perSecond);
+        }
+
+        private void generate(final UniqueIdSequencer sequencer, final int worker) {
+            for (;;) {
+                // published before the ticket is taken, so a drop never misses the phase of the ticket
+                active.set(worker, phase(issued.get()));
+                final long ticket = issued.getAndAdd(BATCH);
+                if (ticket >= total) {
+                    return;
+                }
+                final int phase = phase(ticket);
+                active.set(worker, phase);
+                while (clockPhase < phase) {
+                    if (failure.get() != null) {
+                        return;
+                    }
+                    Thread.yield();
+                }
+                long lastSecond = -1;
+                AtomicLongArray bitmap = null;
+                for (int i = 0; i < BATCH; i++) {
+                    if ((ticket + i + BATCH / 2) % perSecond == 0) {
+                        // the start of the next phase, the other threads are in the middle of their batches
+                        advance(phase(ticket + i));
+                    }
+                    UniqueId id;
+                    try {
+                        id = UniqueId.get(sequencer);
+                    } catch (IllegalArgumentException e) {
+                        rejected.increment();
+                        continue;
+                    }
+                    long timestamp = id.getTimestamp() & 0xffffffffL;
+                    if (timestamp != lastSecond || bitmap == null) {
+                        bitmap = bitmap(timestamp);
+                        lastSecond = timestamp;
+                    }
+                    if (bitmap == null) {
+                        late.increment();
+                    } else if (!set(bitmap, id.getCounter())) {
+                        duplicates.increment();
+                        firstDuplicate.compareAndSet(null, id.toHexString());
+                    }
+                    generated.increment();
+                }
+            }
+        }
+
+        private AtomicLongArray bitmap(final long timestamp) {
+            AtomicLongArray bitmap = bitmaps.get(timestamp);
+            if (bitmap == null) {
+                if (dropped.contains(timestamp)) {
+                    return null;
+                }
+                bitmap = bitmaps.computeIfAbsent(timestamp, k -> new AtomicLongArray(1 << 18));
+            }
+            return bitmap;
+        }
+
+        private static boolean set(final AtomicLongArray bitmap, final int counter) {
+            final int index = counter >>> 6;
+            final long mask = 1L << (counter & 63);
+            for (;;) {
+                long word = bitmap.get(index);
+                if ((word & mask) != 0) {
+                    return false;
+                }
+                if (bitmap.compareAndSet(index, word, word | mask)) {
+                    return true;
+                }
+            }
+        }
+
+        private void advance(final int next) {
+            if (next >= schedule.length) {
+                return;
+            }
+            final long current = schedule[next];
+            clock = current;
+            clockPhase = next;
+            maxBitmaps.accumulateAndGet(bitmaps.size(), Math::max);
+            // the ids are never before the clock a batch started with, drop the seconds before the rest of the schedule of the oldest batch
+            int oldest = phase(issued.get());
+            for (int i = 0; i < threads; i++) {
+                oldest = Math.min(oldest, active.get(i));
+            }
+            final long min = scheduleMin[Math.min(oldest, schedule.length - 1)];
+            for (Long timestamp : new ArrayList<Long>(bitmaps.keySet())) {
+                long unwrapped = current + (int) (timestamp - (current & 0xffffffffL));
+                if (unwrapped < min) {
+                    dropped.add(timestamp);
+                    bitmaps.remove(timestamp);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return mode + " threads:" + threads + " ids:" + generated.sum() + " rejected:" + rejected.sum() + " duplicates:" + duplicates.sum()
+                    + " (first " + firstDuplicate.get() + ") late:" + late.sum() + " bitmaps:" + maxBitmaps + " QPS:"
+                    + generated.sum() * 1000L / Math.max(1L, elapsed);
+        }
+    }
+}
@@ -20,9 +20,21 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -217,6 +229,236 @@ public class UniqueIdTest {
         return set;
     }
 
+    @Test
+    public void testTimeRange() {
+        UniqueId id = UniqueId.get();
+        Instant instant = Instant.ofEpochSecond(id.getTimestamp(), 999999999);
+        UniqueId min = UniqueId.minForTime(instant);
+        UniqueId max = UniqueId.maxForTime(instant);
+        Assert.assertTrue(min.getTimestamp() == id.getTimestamp() && max.getTimestamp() == id.getTimestamp());
+        Assert.assertTrue(min.compareTo(id) < 0 && max.compareTo(id) > 0);
+        Assert.assertTrue(min.toHexString().compareTo(id.toHexString()) < 0 && max.toHexString().compareTo(id.toHexString()) > 0);
+        Assert.assertTrue(max.compareTo(UniqueId.minForTime(instant.plusSeconds(1))) < 0);
+        Assert.assertTrue(min.compareTo(UniqueId.maxForTime(instant.minusSeconds(1))) > 0);
+        Assert.assertTrue("000000000000000000000000000000".equals(UniqueId.minForTime(Instant.EPOCH).toHexString()));
+        Assert.assertTrue("00000000ffffffffffffffffffffff".equals(UniqueId.maxForTime(Instant.EPOCH).toHexString()));
+        Assert.assertTrue(max.equals(UniqueId.fromByteArray(max.toByteArray())));
+    }
+
+    @Test
+    public void testSortableBase64() {
+        List<UniqueId> ids = new ArrayList<UniqueId>();
+        List<String> strings = new ArrayList<String>();
+        for (int i = 0; i < 100000; i++) {
+            ids.add(UniqueId.fromByteArray(UUID.randomUUID().toString().substring(0, 15).getBytes()));
+            ids.add(UniqueId.get());
+        }
+        ids.add(UniqueId.minForTime(Instant.EPOCH));
+        ids.add(UniqueId.maxForTime(Instant.ofEpochSecond(0xffffffffL)));
+        for (UniqueId id : ids) {
+            String sortable = id.toSortableBase64String();
+            Assert.assertTrue(UniqueId.isValid(sortable));
+            Assert.assertTrue(id.equals(UniqueId.fromSortableBase64String(sortable)));
+            Assert.assertTrue(Base64.getUrlEncoder().encodeToString(id.toByteArray()).equals(id.toBase64String()));
+            strings.add(sortable);
+        }
+        Collections.sort(ids);
+        Collections.sort(strings);
+        for (int i = 0; i < ids.size(); i++) {
+            Assert.assertTrue("Sortable base64 order is not the id order", ids.get(i).toSortableBase64String().equals(strings.get(i)));
+        }
+        Assert.assertTrue("--------------------".equals(UniqueId.minForTime(Instant.EPOCH).toSortableBase64String()));
+    }
+
+    @Test
+    public void testUUID() {
+        List<UniqueId> ids = new ArrayList<UniqueId>();
+        for (int i = 0; i < 100000; i++) {
+            ids.add(UniqueId.fromByteArray(UUID.randomUUID().toString().substring(0, 15).getBytes()));
+            ids.add(UniqueId.get());
+        }
+        ids.add(UniqueId.minForTime(Instant.EPOCH));
+        ids.add(UniqueId.maxForTime(Instant.ofEpochSecond(0xffffffffL)));
+        Collections.sort(ids);
+        UniqueId[] array = ids.toArray(new UniqueId[ids.size()]);
+        UUID[] uuids = UniqueId.toUUIDs(array);
+        byte[] packed = UniqueId.toPackedUUIDByteArray(array);
+        Assert.assertTrue(packed.length == array.length * 16);
+        Assert.assertTrue(ids.equals(Arrays.asList(UniqueId.fromUUIDs(uuids))));
+        Assert.assertTrue(ids.equals(Arrays.asList(UniqueId.fromPackedUUIDByteArray(packed))));
+        for (int i = 0; i < array.length; i++) {
+            Assert.assertTrue(array[i].equals(UniqueId.fromUUID(array[i].toUUID())));
+            Assert.assertTrue(array[i].equals(UniqueId.fromUUIDByteArray(array[i].toUUIDByteArray())));
+            Assert.assertTrue(Arrays.equals(array[i].toUUIDByteArray(), Arrays.copyOfRange(packed, i * 16, i * 16 + 16)));
+            if (i > 0) {
+                int order = Integer.signum(array[i - 1].compareTo(array[i]));
+                Assert.assertTrue("UUID order is not the id order", order == Integer.signum(uuids[i - 1].compareTo(uuids[i])));
+                Assert.assertTrue("UUID bytes order is not the id order",
+                        order == compareUnsigned(array[i - 1].toUUIDByteArray(), array[i].toUUIDByteArray()));
+            }
+        }
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                return (a[i] & 0xff) < (b[i] & 0xff) ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    @Test
+    public void testException9() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("The UUID is not converted from an UniqueId.");
+        UniqueId.fromUUID(new UUID(-1L, 0L));
+    }
+
+    @Test
+    public void testCachedString() {
+        UniqueId id = UniqueId.get();
+        String base64 = id.toBase64String();
+        String hex = id.toHexString();
+        Assert.assertSame(base64, id.toBase64String());
+        Assert.assertSame(base64, id.toString());
+        Assert.assertSame(hex, id.toHexString());
+        String copy = new String(base64);
+        Assert.assertSame(copy, UniqueId.fromBase64String(copy).toBase64String());
+        copy = new String(hex);
+        Assert.assertSame(copy, UniqueId.fromHexString(copy).toHexString());
+        // only the canonical lower case hex string is kept
+        Assert.assertTrue(hex.equals(UniqueId.fromHexString(hex.toUpperCase()).toHexString()));
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        UniqueId[] ids = new UniqueId[1000];
+        UniqueId.nextBatch(ids, 0, ids.length);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(ids);
+        out.close();
+        System.out.println("Serialized size per id:" + bytes.size() / ids.length);
+        // 15 bytes per id plus 9 bytes of object and block data framing
+        Assert.assertTrue(bytes.size() < 25 * ids.length);
+        ByteArrayOutputStream single = new ByteArrayOutputStream();
+        out = new ObjectOutputStream(single);
+        out.writeObject(ids[0]);
+        out.close();
+        System.out.println("Serialized size of one id:" + single.size());
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        UniqueId[] copies = (UniqueId[]) in.readObject();
+        Assert.assertTrue(Arrays.equals(ids, copies));
+        Assert.assertTrue(copies[0].getClass() == UniqueId.class);
+        // the default form written by the former versions
+        String legacy = "aced0005737200176f72672e66696e74782e7574696c2e556e69717565496432eebe4c9f646a80020004490007636f756e7465724a00116d616368696e65"
+                + "4964656e74696669657253001170726f636573734964656e74696669657249000974696d657374616d707870000eea83000002fc00000001189e6ad60458";
+        in = new ObjectInputStream(new ByteArrayInputStream(UniqueIdCodec.parseHexString(legacy)));
+        Assert.assertTrue("atYEWAL8AAAAARieDuqD".equals(in.readObject().toString()));
+    }
+
+    @Test
+    public void testReadWrite() throws IOException {
+        List<UniqueId> ids = new ArrayList<UniqueId>();
+        // more then the first array of readAll
+        for (int i = 0; i < 10000; i++) {
+            ids.add(UniqueId.get());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ids.get(0).writeTo(out);
+        UniqueId.writeAll(out, ids);
+        UniqueId.writeAll(out, new UniqueId[0]);
+        out.close();
+        Assert.assertTrue(bytes.size() == 15 + 4 + 15 * ids.size() + 4);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Assert.assertTrue(ids.get(0).equals(UniqueId.readFrom(in)));
+        Assert.assertTrue(ids.equals(Arrays.asList(UniqueId.readAll(in))));
+        Assert.assertTrue(0 == UniqueId.readAll(in).length);
+        Assert.assertTrue(Arrays.equals(ids.get(1).toByteArray(), Arrays.copyOfRange(bytes.toByteArray(), 34, 49)));
+    }
+
+    @Test
+    public void testException10() throws IOException {
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Invalid number of ids:-1");
+        UniqueId.readAll(new DataInputStream(new ByteArrayInputStream(new byte[] { -1, -1, -1, -1 })));
+    }
+
+    @Test
+    public void testException13() throws IOException {
+        thrown.expect(EOFException.class);
+        // a corrupt number of ids, only one id follows
+        byte[] bytes = new byte[4 + 15];
+        bytes[0] = 0x7f;
+        bytes[1] = -1;
+        bytes[2] = -1;
+        bytes[3] = -1;
+        UniqueId.readAll(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    public void testEpochSecond() {
+        UniqueId id = UniqueId.get();
+        Assert.assertTrue(id.getEpochSecond() == id.getTimestamp());
+        Assert.assertTrue(id.getInstant().getEpochSecond() == id.getTimestamp());
+        Assert.assertTrue(id.getDate().getTime() == id.getEpochSecond() * 1000L);
+        // a timestamp after the reference time is not an error
+        Assert.assertTrue(id.getEpochSecond(id.getTimestamp() - 3600) == id.getTimestamp());
+        Assert.assertTrue(id.getInstant(id.getTimestamp() - 3600).equals(Instant.ofEpochSecond(id.getTimestamp())));
+        // the nearest round of 2^32 seconds
+        UniqueId end = UniqueId.maxForTime(Instant.ofEpochSecond(0xffffffffL));
+        Assert.assertTrue(0xffffffffL == end.getEpochSecond(0x100000005L));
+        Assert.assertTrue(0x1ffffffffL == end.getEpochSecond(0x1fffffff0L));
+        Assert.assertTrue(0x100000000L == UniqueId.minForTime(Instant.EPOCH).getEpochSecond(0xfffffff0L));
+        Assert.assertTrue(0xffffffffL == end.getEpochSecond(0L));
+
+        long now = System.currentTimeMillis() / 1000L;
+        int count = 1000000;
+        String[] hexStrings = new String[count];
+        String[] base64Strings = new String[count];
+        String[] sortableStrings = new String[count];
+        for (int i = 0; i < count; i++) {
+            UniqueId uniqueId = UniqueId.fromFields((int) (now - i), 0x0000a1b2c3d4e5f0L, (short) i, i);
+            hexStrings[i] = uniqueId.toHexString();
+            base64Strings[i] = uniqueId.toBase64String();
+            sortableStrings[i] = uniqueId.toSortableBase64String();
+        }
+        long begin = System.currentTimeMillis();
+        long[] hexSeconds = UniqueId.getEpochSeconds(now, hexStrings);
+        long[] base64Seconds = UniqueId.getEpochSeconds(now, base64Strings);
+        long[] sortableSeconds = UniqueId.getEpochSecondsOfSortable(now, sortableStrings);
+        long end1 = System.currentTimeMillis();
+        System.out.println("Epoch second extraction QPS:" + 3L * count * 1000L / Math.max(1L, end1 - begin));
+        for (int i = 0; i < count; i++) {
+            Assert.assertTrue(now - i == hexSeconds[i] && now - i == base64Seconds[i] && now - i == sortableSeconds[i]);
+        }
+        Assert.assertTrue(2 == UniqueId.getEpochSeconds(now, id.toHexString().toUpperCase(), id.toBase64String()).length);
+    }
+
+    @Test
+    public void testException11() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("invalid base64 character: [");
+        UniqueId.getEpochSeconds(0L, "AAAAA*AAAAAAAAAAAAAA");
+    }
+
+    @Test
+    public void testException8() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("The instant must not be before the Unix epoch.");
+        UniqueId.minForTime(Instant.ofEpochSecond(-1));
+    }
+
+    @Test
+    public void testException12() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("The instant must be before 2106-02-07T06:28:16Z.");
+        // the timestamp would wrap around to the Unix epoch
+        UniqueId.maxForTime(Instant.ofEpochSecond(0x100000000L));
+    }
+
     @Test
     public void testException1() {
         thrown.expect(IllegalArgumentException.class);
@@ -0,0 +1,265 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintx.util;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks the generation path is free of monitors, so virtual threads (JDK 21+) never pin their carrier threads. The virtual thread cases are skipped
+ * on older JDKs, the CI build runs them on JDK 21 (surefire runs the virtual threads on 4 carriers, so they reach the rollover together even on one
+ * CPU).
+ *
+ * <p>
+ * The throughput of a virtual thread per task against a platform thread per task is a benchmark, skipped unless
+ * {@value UniqueIdPlatformTest#BENCHMARK_PROPERTY} is set: {@code mvn test -Dtest=UniqueIdVirtualThreadTest -Dorg.fintx.util.benchmark=true}.
+ * </p>
+ *
+ * @author bluecreator(qiang.x.wang@gmail.com)
+ *
+ */
+public class UniqueIdVirtualThreadTest {
+    public int tasks = 100000;
+    public int idsPerTask = 20;
+
+    @Test
+    public void testNoMonitorAtRollover() throws InterruptedException {
+        AtomicBoolean error = new AtomicBoolean(false);
+        Thread generator = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    // cross at least two second rollovers
+                    long end = System.currentTimeMillis() + 2500L;
+                    while (System.currentTimeMillis() < end) {
+                        UniqueId.get();
+                    }
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                    error.set(true);
+                }
+            }
+
+        });
+        // the generator would block at the rollover if it was still synchronized on the class
+        synchronized (UniqueId.class) {
+            generator.start();
+            generator.join(10000L);
+            Assert.assertFalse("Generator blocked by the UniqueId.class monitor", generator.isAlive());
+        }
+        Assert.assertFalse(error.get());
+    }
+
+    @Test
+    public void testNoPinning() throws Exception {
+        ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+        Assume.assumeNotNull(virtual);
+        Set<UniqueId> set = ConcurrentHashMap.newKeySet(tasks * idsPerTask);
+        AtomicBoolean stop = new AtomicBoolean(false);
+        // a generator taking the UniqueId.class monitor (as before it was lock free) would be blocked by this thread now and then
+        Thread holder = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    while (!stop.get()) {
+                        synchronized (UniqueId.class) {
+                            Thread.sleep(1L);
+                        }
+                        Thread.sleep(1L);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+        });
+        List<String> blocked;
+        holder.start();
+        try {
+            blocked = recordBlocking(() -> {
+                run(virtual, set);
+                // cross at least two second rollovers
+                runFor(newVirtualThreadPerTaskExecutor(), 2500L);
+                return null;
+            });
+        } finally {
+            stop.set(true);
+            holder.join();
+        }
+        Assert.assertTrue("Virtual thread pinned or blocked:" + blocked, blocked.isEmpty());
+        Assert.assertTrue("Duplicated key found in virtual threads", set.size() == tasks * idsPerTask);
+    }
+
+    @Test
+    public void testVirtualThreadThroughput() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean(UniqueIdPlatformTest.BENCHMARK_PROPERTY));
+        ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+        Assume.assumeNotNull(virtual);
+        Set<UniqueId> set = ConcurrentHashMap.newKeySet(tasks * idsPerTask);
+        long begin = System.currentTimeMillis();
+        run(virtual, set);
+        long end = System.currentTimeMillis();
+        Assert.assertTrue("Duplicated key found in virtual threads", set.size() == tasks * idsPerTask);
+        System.out.println("Virtual thread per task ID generation total tasks:" + tasks + " total milliseconds:" + (end - begin));
+        System.out.println("Virtual thread per task ID generation QPS:" + tasks * idsPerTask * 1000L / Math.max(1L, end - begin));
+
+        set.clear();
+        begin = System.currentTimeMillis();
+        run(newPlatformThreadPerTaskExecutor(), set);
+        end = System.currentTimeMillis();
+        Assert.assertTrue("Duplicated key found in platform threads", set.size() == tasks * idsPerTask);
+        System.out.println("Platform thread per task ID generation total tasks:" + tasks + " total milliseconds:" + (end - begin));
+        System.out.println("Platform thread per task ID generation QPS:" + tasks * idsPerTask * 1000L / Math.max(1L, end - begin));
+    }
+
+    private void run(ExecutorService executor, Set<UniqueId> set) throws InterruptedException {
+        for (int i = 0; i < tasks; i++) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < idsPerTask; j++) {
+                        UniqueId id = UniqueId.get();
+                        if (set != null) {
+                            set.add(id);
+                        }
+                    }
+                }
+
+            });
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+    }
+
+    private void runFor(ExecutorService executor, long millis) throws InterruptedException {
+        long end = System.currentTimeMillis() + millis;
+        for (int i = 0; i < tasks / idsPerTask; i++) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    while (System.currentTimeMillis() < end) {
+                        for (int j = 0; j < idsPerTask; j++) {
+                            UniqueId.get();
+                        }
+                        // let the other virtual threads run on the carriers, so many of them reach the rollover together
+                        Thread.yield();
+                    }
+                }
+
+            });
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+    }
+
+    /**
+     * Records the JFR events of virtual threads pinned, and of threads blocked entering a monitor of this library, while running the task. jdk.jfr is
+     * used by reflection as the project is compiled for Java 8.
+     *
+     * @param task the task
+     * @return the events found
+     */
+    private static List<String> recordBlocking(Callable<Void> task) throws Exception {
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.getConstructor().newInstance();
+        Method withThreshold = Class.forName("jdk.jfr.EventSettings").getMethod("withThreshold", Duration.class);
+        for (String event : new String[] { "jdk.VirtualThreadPinned", "jdk.JavaMonitorEnter" }) {
+            withThreshold.invoke(recordingClass.getMethod("enable", String.class).invoke(recording, event), Duration.ZERO);
+        }
+        Path file = Files.createTempFile("UniqueIdVirtualThreadTest", ".jfr");
+        try {
+            recordingClass.getMethod("start").invoke(recording);
+            try {
+                task.call();
+            } finally {
+                recordingClass.getMethod("stop").invoke(recording);
+            }
+            recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+            recordingClass.getMethod("close").invoke(recording);
+
+            Method getEventType = Class.forName("jdk.jfr.consumer.RecordedEvent").getMethod("getEventType");
+            Method getName = Class.forName("jdk.jfr.EventType").getMethod("getName");
+            Method getStackTrace = Class.forName("jdk.jfr.consumer.RecordedEvent").getMethod("getStackTrace");
+            Method getFrames = Class.forName("jdk.jfr.consumer.RecordedStackTrace").getMethod("getFrames");
+            Method getMethod = Class.forName("jdk.jfr.consumer.RecordedFrame").getMethod("getMethod");
+            Method getType = Class.forName("jdk.jfr.consumer.RecordedMethod").getMethod("getType");
+            Method getClassName = Class.forName("jdk.jfr.consumer.RecordedClass").getMethod("getName");
+            List<?> events = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile").getMethod("readAllEvents", Path.class).invoke(null, file);
+            List<String> found = new ArrayList<String>();
+            for (Object event : events) {
+                if ("jdk.VirtualThreadPinned".equals(getName.invoke(getEventType.invoke(event)))) {
+                    found.add(event.toString());
+                } else {
+                    // the monitor entered by a method of this library, not of others (e.g. ConcurrentHashMap) or of the test
+                    Object stackTrace = getStackTrace.invoke(event);
+                    List<?> frames = stackTrace == null ? null : (List<?>) getFrames.invoke(stackTrace);
+                    if (frames != null && !frames.isEmpty()) {
+                        String type = (String) getClassName.invoke(getType.invoke(getMethod.invoke(frames.get(0))));
+                        if (type.startsWith("org.fintx.") && !type.startsWith(UniqueIdVirtualThreadTest.class.getName())) {
+                            found.add(event.toString());
+                        }
+                    }
+                }
+            }
+            return found;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Gets Executors.newThreadPerTaskExecutor(ThreadFactory) of platform threads by reflection as the project is compiled for Java 8.
+     *
+     * @return the executor
+     */
+    private static ExecutorService newPlatformThreadPerTaskExecutor() throws ReflectiveOperationException {
+        ThreadFactory factory = Thread::new;
+        return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+    }
+
+    /**
+     * Gets Executors.newVirtualThreadPerTaskExecutor() by reflection as the project is compiled for Java 8.
+     *
+     * @return the executor or null if virtual threads are not supported
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ *  Copyright 2017 FinTx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fintx.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author bluecreator(qiang.x.wang@gmail.com)
+ *
+ */
+public class UniqueIdPublisherTest {
+
+    @Test
+    public void testDemand() throws InterruptedException {
+        Set<UniqueId> set = new HashSet<UniqueId>();
+        CountDownLatch done = new CountDownLatch(1);
+        Flow.Subscription[] subscription = new Flow.Subscription[1];
+        new UniqueIdPublisher().subscribe(new Flow.Subscriber<UniqueId>() {
+
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription[0] = s;
+            }
+
+            @Override
+            public void onNext(UniqueId item) {
+                set.add(item);
+                if (set.size() == 5000) {
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throwable.printStackTrace();
+            }
+
+            @Override
+            public void onComplete() {
+            }
+
+        });
+        Assert.assertTrue(set.isEmpty());
+        subscription[0].request(3);
+        Assert.assertTrue(set.size() == 3);
+        subscription[0].request(4997);
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        subscription[0].cancel();
+        subscription[0].request(10);
+        Assert.assertTrue("Duplicated key found or demand not honored", set.size() == 5000);
+    }
+
+    @Test
+    public void testSubscriberException() {
+        Throwable[] error = new Throwable[1];
+        int[] received = new int[1];
+        Flow.Subscription[] subscription = new Flow.Subscription[1];
+        new UniqueIdPublisher().subscribe(new Flow.Subscriber<UniqueId>() {
+
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription[0] = s;
+            }
+
+            @Override
+            public void onNext(UniqueId item) {
+                if (++received[0] == 3) {
+                    throw new IllegalStateException("broken subscriber");
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                error[0] = throwable;
+            }
+
+            @Override
+            public void onComplete() {
+            }
+
+        });
+        subscription[0].request(10);
+        Assert.assertTrue(error[0] instanceof IllegalStateException);
+        Assert.assertTrue(received[0] == 3);
+        // cancelled, nothing more is emitted
+        subscription[0].request(10);
+        Assert.assertTrue(received[0] == 3);
+    }
+
+    @Test
+    public void testInvalidRequest() {
+        Throwable[] error = new Throwable[1];
+        new UniqueIdPublisher().subscribe(new Flow.Subscriber<UniqueId>() {
+
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                s.request(0);
+            }
+
+            @Override
+            public void onNext(UniqueId item) {
+                Assert.fail();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                error[0] = throwable;
+            }
+
+            @Override
+            public void onComplete() {
+            }
+
+        });
+        Assert.assertTrue(error[0] instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void testInvalidRequestInOnNext() {
+        Throwable[] error = new Throwable[1];
+        int[] received = new int[1];
+        boolean[] inOnNext = new boolean[1];
+        Flow.Subscription[] subscription = new Flow.Subscription[1];
+        new UniqueIdPublisher().subscribe(new Flow.Subscriber<UniqueId>() {
+
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription[0] = s;
+            }
+
+            @Override
+            public void onNext(UniqueId item) {
+                inOnNext[0] = true;
+                if (++received[0] == 2) {
+                    subscription[0].request(-1);
+                }
+                inOnNext[0] = false;
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                // signalled by the drain loop after onNext returned
+                Assert.assertTrue(!inOnNext[0]);
+                error[0] = throwable;
+            }
+
+            @Override
+            public void onComplete() {
+            }
+
+        });
+        subscription[0].request(10);
+        Assert.assertTrue(error[0] instanceof IllegalArgumentException);
+        Assert.assertTrue(received[0] == 2);
+    }
+}